@@ -0,0 +1,747 @@
+package com.gelakinetic.GathererScraper;
+
+import com.gelakinetic.GathererScraper.JsonTypes.Card;
+import com.gelakinetic.GathererScraper.JsonTypes.Card.ForeignPrinting;
+import com.gelakinetic.GathererScraper.JsonTypes.Expansion;
+import com.gelakinetic.GathererScraper.JsonTypes.ForeignPrintingList;
+import com.gelakinetic.GathererScraper.JsonTypes.Patch;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class encodes patches in a binary, columnar form, which clients can
+ * load without parsing JSON. It holds exactly what the JSON form holds, so a
+ * patch can go to binary and back without changing its JSON.
+ *
+ * The layout is:
+ * <pre>
+ * "GSPB", a version byte, then the number of cards
+ * The expansion, field by field
+ * The string dictionary: a count, then each string's length and UTF-8 bytes
+ * The columns: a count, then each column's ID, length and bytes
+ * </pre>
+ * Every number is an unsigned LEB128 varint, and signed numbers are zigzag
+ * encoded first. Strings outside of columns are written as their length plus
+ * one, so zero can mean null.
+ *
+ * There is one column for each card field, with one value per card in patch
+ * order. Fields which repeat a lot, like types, artists, expansions and
+ * language codes, are indexes into the string dictionary, where zero is null.
+ * Numbers are varints, and multiverse IDs are deltas from the card before.
+ * Power and toughness are twice their value, so halves and the sentinels from
+ * CardDbAdapter are small varints. Fields which are mostly unique, like names
+ * and text, are stored as a list of null rows, a table of big endian int
+ * offsets, then the UTF-8 bytes, so any one can be read without the rest.
+ * Foreign printings have a count column, with the printings for every card
+ * laid end to end in their own language and name columns
+ */
+class BinaryPatch {
+
+    static final String PATCH_EXTENSION = ".gspb.gzip";
+
+    private static final byte[] MAGIC = {'G', 'S', 'P', 'B'};
+    private static final int VERSION = 1;
+
+    /* Column IDs. New columns get new IDs, and readers skip IDs they don't know */
+    private static final int COLUMN_NAME = 1;
+    private static final int COLUMN_MANA_COST = 2;
+    private static final int COLUMN_CMC = 3;
+    private static final int COLUMN_TYPE = 4;
+    private static final int COLUMN_TEXT = 5;
+    private static final int COLUMN_FLAVOR = 6;
+    private static final int COLUMN_EXPANSION = 7;
+    private static final int COLUMN_RARITY = 8;
+    private static final int COLUMN_NUMBER = 9;
+    private static final int COLUMN_ARTIST = 10;
+    private static final int COLUMN_COLOR = 11;
+    private static final int COLUMN_COLOR_IDENTITY = 12;
+    private static final int COLUMN_MULTIVERSE_ID = 13;
+    private static final int COLUMN_POWER = 14;
+    private static final int COLUMN_TOUGHNESS = 15;
+    private static final int COLUMN_LOYALTY = 16;
+    private static final int COLUMN_FOREIGN_COUNT = 17;
+    private static final int COLUMN_FOREIGN_LANGUAGE = 18;
+    private static final int COLUMN_FOREIGN_NAME = 19;
+    private static final int COLUMN_WATERMARK = 20;
+
+    /* Power and toughness which aren't a whole or half number are flagged, then written as float bits */
+    private static final int PT_FLOAT_BITS = 1;
+
+    /**
+     * Encode a patch
+     *
+     * @param patch The patch to encode
+     * @param out   The stream to write the binary patch to. It isn't closed
+     * @throws IOException If the patch can't be encoded, or the stream can't be written
+     */
+    static void write(Patch patch, OutputStream out) throws IOException {
+        if (null == patch.mExpansion || null == patch.mCards || patch.mCards.contains(null)) {
+            throw new IOException("A binary patch needs an expansion and cards");
+        }
+        ArrayList<Card> cards = patch.mCards;
+        LinkedHashMap<String, Integer> dictionary = new LinkedHashMap<>();
+
+        /* Fill every column, adding repeated strings to the dictionary along the way */
+        ByteArrayOutputStream manaCosts = new ByteArrayOutputStream();
+        ByteArrayOutputStream cmcs = new ByteArrayOutputStream();
+        ByteArrayOutputStream types = new ByteArrayOutputStream();
+        ByteArrayOutputStream expansions = new ByteArrayOutputStream();
+        ByteArrayOutputStream rarities = new ByteArrayOutputStream();
+        ByteArrayOutputStream artists = new ByteArrayOutputStream();
+        ByteArrayOutputStream colors = new ByteArrayOutputStream();
+        ByteArrayOutputStream colorIdentities = new ByteArrayOutputStream();
+        ByteArrayOutputStream multiverseIds = new ByteArrayOutputStream();
+        ByteArrayOutputStream powers = new ByteArrayOutputStream();
+        ByteArrayOutputStream toughnesses = new ByteArrayOutputStream();
+        ByteArrayOutputStream loyalties = new ByteArrayOutputStream();
+        ByteArrayOutputStream foreignCounts = new ByteArrayOutputStream();
+        ByteArrayOutputStream foreignLanguages = new ByteArrayOutputStream();
+        ByteArrayOutputStream watermarks = new ByteArrayOutputStream();
+        ArrayList<String> names = new ArrayList<>(cards.size());
+        ArrayList<String> texts = new ArrayList<>(cards.size());
+        ArrayList<String> flavors = new ArrayList<>(cards.size());
+        ArrayList<String> numbers = new ArrayList<>(cards.size());
+        ArrayList<String> foreignNames = new ArrayList<>();
+
+        int lastMultiverseId = 0;
+        for (Card card : cards) {
+            names.add(card.mName);
+            writeDictionaryIndex(manaCosts, dictionary, card.mManaCost);
+            writeVarLong(cmcs, zigzag(card.mCmc));
+            writeDictionaryIndex(types, dictionary, card.mType);
+            texts.add(card.mText);
+            flavors.add(card.mFlavor);
+            writeDictionaryIndex(expansions, dictionary, card.mExpansion);
+            writeVarLong(rarities, card.mRarity);
+            numbers.add(card.mNumber);
+            writeDictionaryIndex(artists, dictionary, card.mArtist);
+            writeDictionaryIndex(colors, dictionary, card.mColor);
+            writeDictionaryIndex(colorIdentities, dictionary, card.getColorIdentity());
+            writeVarLong(multiverseIds, zigzag((long) card.mMultiverseId - lastMultiverseId));
+            lastMultiverseId = card.mMultiverseId;
+            writePowerToughness(powers, card.mPower);
+            writePowerToughness(toughnesses, card.mToughness);
+            writeVarLong(loyalties, zigzag(card.mLoyalty));
+            if (null == card.mForeignPrintings) {
+                writeVarLong(foreignCounts, 0);
+            } else {
+                writeVarLong(foreignCounts, card.mForeignPrintings.size() + 1);
+                for (ForeignPrinting fp : card.mForeignPrintings) {
+                    writeDictionaryIndex(foreignLanguages, dictionary, fp.mLanguageCode);
+                    foreignNames.add(fp.mName);
+                }
+            }
+            writeDictionaryIndex(watermarks, dictionary, card.mWatermark);
+        }
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        header.write(MAGIC);
+        header.write(VERSION);
+        writeVarLong(header, cards.size());
+        writeExpansion(header, patch.mExpansion);
+        writeVarLong(header, dictionary.size());
+        for (String string : dictionary.keySet()) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(header, bytes.length);
+            header.write(bytes);
+        }
+        /* Columns are written in ID order */
+        LinkedHashMap<Integer, ByteArrayOutputStream> columns = new LinkedHashMap<>();
+        columns.put(COLUMN_NAME, stringColumn(names));
+        columns.put(COLUMN_MANA_COST, manaCosts);
+        columns.put(COLUMN_CMC, cmcs);
+        columns.put(COLUMN_TYPE, types);
+        columns.put(COLUMN_TEXT, stringColumn(texts));
+        columns.put(COLUMN_FLAVOR, stringColumn(flavors));
+        columns.put(COLUMN_EXPANSION, expansions);
+        columns.put(COLUMN_RARITY, rarities);
+        columns.put(COLUMN_NUMBER, stringColumn(numbers));
+        columns.put(COLUMN_ARTIST, artists);
+        columns.put(COLUMN_COLOR, colors);
+        columns.put(COLUMN_COLOR_IDENTITY, colorIdentities);
+        columns.put(COLUMN_MULTIVERSE_ID, multiverseIds);
+        columns.put(COLUMN_POWER, powers);
+        columns.put(COLUMN_TOUGHNESS, toughnesses);
+        columns.put(COLUMN_LOYALTY, loyalties);
+        columns.put(COLUMN_FOREIGN_COUNT, foreignCounts);
+        columns.put(COLUMN_FOREIGN_LANGUAGE, foreignLanguages);
+        columns.put(COLUMN_FOREIGN_NAME, stringColumn(foreignNames));
+        columns.put(COLUMN_WATERMARK, watermarks);
+
+        writeVarLong(header, columns.size());
+        header.writeTo(out);
+        for (Map.Entry<Integer, ByteArrayOutputStream> column : columns.entrySet()) {
+            header.reset();
+            writeVarLong(header, column.getKey());
+            writeVarLong(header, column.getValue().size());
+            header.writeTo(out);
+            column.getValue().writeTo(out);
+        }
+    }
+
+    /**
+     * Encode a patch, check it, and write it gzipped to a temporary file which
+     * is then renamed over the target
+     *
+     * @param patch     The patch to encode
+     * @param patchFile The file to write the gzipped binary patch to
+     * @throws IOException If the patch can't be encoded, doesn't decode to the same JSON, or can't be written
+     */
+    static void writeFile(Patch patch, File patchFile) throws IOException {
+        byte[] encoded = encodeAndVerify(patch);
+        File tmpFile = File.createTempFile(patchFile.getName() + ".", ".tmp", patchFile.getAbsoluteFile().getParentFile());
+        try {
+            try (OutputStream out = new ParallelGzipOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+                out.write(encoded);
+            }
+            GathererScraper.replaceAtomically(tmpFile, patchFile);
+        } finally {
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * Encode a patch, then check that decoding it gives the same JSON
+     *
+     * @param patch The patch to encode
+     * @return The binary patch
+     * @throws IOException If the patch can't be encoded, or doesn't decode to the same JSON
+     */
+    static byte[] encodeAndVerify(Patch patch) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(patch, out);
+        byte[] encoded = out.toByteArray();
+        verify(patch, encoded);
+        return encoded;
+    }
+
+    /**
+     * Check that a binary patch decodes to the same JSON as a patch
+     *
+     * @param patch   The patch which was encoded
+     * @param encoded The binary patch
+     * @throws IOException If the binary patch can't be read, or its JSON is different
+     */
+    static void verify(Patch patch, byte[] encoded) throws IOException {
+        Patch decoded = new Reader(ByteBuffer.wrap(encoded)).readPatch();
+        String expected = GathererScraper.getGson().toJson(patch, Patch.class);
+        String actual = GathererScraper.getGson().toJson(decoded, Patch.class);
+        if (!expected.equals(actual)) {
+            int i = 0;
+            while (i < expected.length() && i < actual.length() && expected.charAt(i) == actual.charAt(i)) {
+                i++;
+            }
+            throw new IOException("Binary patch for " + patch.mExpansion.mCode_gatherer + " differs from JSON at character " + i);
+        }
+    }
+
+    /**
+     * This class reads a binary patch. The expansion, dictionary and small
+     * columns are decoded when it's made. Names and text are only decoded
+     * when a card is read, so any card can be read without reading the others
+     */
+    static class Reader {
+        private final ByteBuffer mBuffer;
+        private final int mNumCards;
+        private final Expansion mExpansion;
+        private final String[] mDictionary;
+
+        private int[] mManaCosts;
+        private int[] mCmcs;
+        private int[] mTypes;
+        private int[] mExpansions;
+        private int[] mRarities;
+        private int[] mArtists;
+        private int[] mColors;
+        private int[] mColorIdentities;
+        private int[] mMultiverseIds;
+        private float[] mPowers;
+        private float[] mToughnesses;
+        private int[] mLoyalties;
+        private int[] mWatermarks;
+
+        /* Where each card's foreign printings start in the foreign columns, or -1 for null */
+        private int[] mForeignStarts;
+        private int[] mForeignLanguages;
+
+        /* Where each string column starts in the buffer */
+        private int mNames = -1;
+        private int mTexts = -1;
+        private int mFlavors = -1;
+        private int mNumbers = -1;
+        private int mForeignNames = -1;
+
+        /**
+         * @param buffer A binary patch, from its position to its limit. It's not modified
+         * @throws IOException If the binary patch is malformed
+         */
+        Reader(ByteBuffer buffer) throws IOException {
+            mBuffer = buffer.slice();
+            try {
+                for (byte b : MAGIC) {
+                    if (mBuffer.get() != b) {
+                        throw new IOException("Not a binary patch");
+                    }
+                }
+                if (mBuffer.get() != VERSION) {
+                    throw new IOException("Unknown binary patch version");
+                }
+                mNumCards = (int) readVarLong(mBuffer);
+                mExpansion = readExpansion(mBuffer);
+                mDictionary = new String[(int) readVarLong(mBuffer) + 1];
+                for (int i = 1; i < mDictionary.length; i++) {
+                    int length = (int) readVarLong(mBuffer);
+                    mDictionary[i] = decode(mBuffer, mBuffer.position(), length);
+                    mBuffer.position(mBuffer.position() + length);
+                }
+
+                int numForeign = 0;
+                long numColumns = readVarLong(mBuffer);
+                for (long i = 0; i < numColumns; i++) {
+                    int id = (int) readVarLong(mBuffer);
+                    int length = (int) readVarLong(mBuffer);
+                    int start = mBuffer.position();
+                    switch (id) {
+                        case COLUMN_NAME:
+                            mNames = start;
+                            break;
+                        case COLUMN_MANA_COST:
+                            mManaCosts = readInts(mNumCards);
+                            break;
+                        case COLUMN_CMC:
+                            mCmcs = readSignedInts(mNumCards);
+                            break;
+                        case COLUMN_TYPE:
+                            mTypes = readInts(mNumCards);
+                            break;
+                        case COLUMN_TEXT:
+                            mTexts = start;
+                            break;
+                        case COLUMN_FLAVOR:
+                            mFlavors = start;
+                            break;
+                        case COLUMN_EXPANSION:
+                            mExpansions = readInts(mNumCards);
+                            break;
+                        case COLUMN_RARITY:
+                            mRarities = readInts(mNumCards);
+                            break;
+                        case COLUMN_NUMBER:
+                            mNumbers = start;
+                            break;
+                        case COLUMN_ARTIST:
+                            mArtists = readInts(mNumCards);
+                            break;
+                        case COLUMN_COLOR:
+                            mColors = readInts(mNumCards);
+                            break;
+                        case COLUMN_COLOR_IDENTITY:
+                            mColorIdentities = readInts(mNumCards);
+                            break;
+                        case COLUMN_MULTIVERSE_ID:
+                            mMultiverseIds = readSignedInts(mNumCards);
+                            for (int j = 1; j < mNumCards; j++) {
+                                mMultiverseIds[j] += mMultiverseIds[j - 1];
+                            }
+                            break;
+                        case COLUMN_POWER:
+                            mPowers = readPowerToughnesses(mNumCards);
+                            break;
+                        case COLUMN_TOUGHNESS:
+                            mToughnesses = readPowerToughnesses(mNumCards);
+                            break;
+                        case COLUMN_LOYALTY:
+                            mLoyalties = readSignedInts(mNumCards);
+                            break;
+                        case COLUMN_FOREIGN_COUNT:
+                            mForeignStarts = new int[mNumCards + 1];
+                            for (int j = 0; j < mNumCards; j++) {
+                                int count = (int) readVarLong(mBuffer);
+                                mForeignStarts[j] = (0 == count) ? -1 : numForeign;
+                                numForeign += Math.max(0, count - 1);
+                            }
+                            mForeignStarts[mNumCards] = numForeign;
+                            break;
+                        case COLUMN_FOREIGN_LANGUAGE:
+                            /* The count column always comes first */
+                            mForeignLanguages = readInts(numForeign);
+                            break;
+                        case COLUMN_FOREIGN_NAME:
+                            mForeignNames = start;
+                            break;
+                        case COLUMN_WATERMARK:
+                            mWatermarks = readInts(mNumCards);
+                            break;
+                        default:
+                            break;
+                    }
+                    mBuffer.position(start + length);
+                }
+            } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+                throw new IOException("Malformed binary patch", e);
+            }
+        }
+
+        /**
+         * @return The number of cards in the patch
+         */
+        int getCardCount() {
+            return mNumCards;
+        }
+
+        /**
+         * @return The patch's expansion
+         */
+        Expansion getExpansion() {
+            return mExpansion;
+        }
+
+        /**
+         * @param index The card's index in the patch
+         * @return The card's multiverse ID, without decoding the rest of the card
+         */
+        int getMultiverseId(int index) {
+            return (null == mMultiverseIds) ? 0 : mMultiverseIds[index];
+        }
+
+        /**
+         * Decode one card. Missing columns leave the field at its default
+         *
+         * @param index The card's index in the patch
+         * @return The card
+         */
+        Card getCard(int index) {
+            Card card = new Card();
+            if (mNames >= 0) {
+                card.mName = getString(mNames, mNumCards, index);
+            }
+            if (null != mManaCosts) {
+                card.mManaCost = mDictionary[mManaCosts[index]];
+            }
+            if (null != mCmcs) {
+                card.mCmc = mCmcs[index];
+            }
+            if (null != mTypes) {
+                card.mType = mDictionary[mTypes[index]];
+            }
+            if (mTexts >= 0) {
+                card.mText = getString(mTexts, mNumCards, index);
+            }
+            if (mFlavors >= 0) {
+                card.mFlavor = getString(mFlavors, mNumCards, index);
+            }
+            if (null != mExpansions) {
+                card.mExpansion = mDictionary[mExpansions[index]];
+            }
+            if (null != mRarities) {
+                card.mRarity = (char) mRarities[index];
+            }
+            if (mNumbers >= 0) {
+                card.mNumber = getString(mNumbers, mNumCards, index);
+            }
+            if (null != mArtists) {
+                card.mArtist = mDictionary[mArtists[index]];
+            }
+            if (null != mColors) {
+                card.mColor = mDictionary[mColors[index]];
+            }
+            if (null != mColorIdentities) {
+                card.setColorIdentity(mDictionary[mColorIdentities[index]]);
+            }
+            card.mMultiverseId = getMultiverseId(index);
+            if (null != mPowers) {
+                card.mPower = mPowers[index];
+            }
+            if (null != mToughnesses) {
+                card.mToughness = mToughnesses[index];
+            }
+            if (null != mLoyalties) {
+                card.mLoyalty = mLoyalties[index];
+            }
+            if (null != mForeignStarts) {
+                int start = mForeignStarts[index];
+                if (start < 0) {
+                    card.mForeignPrintings = null;
+                } else {
+                    /* The next card with printings says where this card's stop */
+                    int end = mForeignStarts[mNumCards];
+                    for (int j = index + 1; j < mNumCards; j++) {
+                        if (mForeignStarts[j] >= 0) {
+                            end = mForeignStarts[j];
+                            break;
+                        }
+                    }
+                    ForeignPrintingList printings = new ForeignPrintingList();
+                    for (int j = start; j < end; j++) {
+                        ForeignPrinting fp = new ForeignPrinting();
+                        fp.mLanguageCode = (null == mForeignLanguages) ? null : mDictionary[mForeignLanguages[j]];
+                        fp.mName = (mForeignNames < 0) ? null : getString(mForeignNames, mForeignStarts[mNumCards], j);
+                        printings.add(fp);
+                    }
+                    card.mForeignPrintings = printings;
+                }
+            }
+            if (null != mWatermarks) {
+                card.mWatermark = mDictionary[mWatermarks[index]];
+            }
+            return card;
+        }
+
+        /**
+         * @return The whole patch
+         */
+        Patch readPatch() {
+            Patch patch = new Patch();
+            patch.mExpansion = mExpansion;
+            patch.mCards = new ArrayList<>(mNumCards);
+            for (int i = 0; i < mNumCards; i++) {
+                patch.mCards.add(getCard(i));
+            }
+            return patch;
+        }
+
+        /**
+         * Read one string from a string column
+         *
+         * @param column  Where the column starts
+         * @param numRows The number of strings in the column
+         * @param row     The string to read
+         * @return The string, or null
+         */
+        private String getString(int column, int numRows, int row) {
+            ByteBuffer buffer = mBuffer.duplicate();
+            buffer.position(column);
+            long numNulls = readVarLong(buffer);
+            int nullRow = 0;
+            for (long i = 0; i < numNulls; i++) {
+                nullRow += (int) readVarLong(buffer);
+                if (nullRow == row) {
+                    return null;
+                }
+            }
+            int offsets = buffer.position();
+            int data = offsets + 4 * (numRows + 1);
+            int start = mBuffer.getInt(offsets + 4 * row);
+            int end = mBuffer.getInt(offsets + 4 * (row + 1));
+            return decode(mBuffer, data + start, end - start);
+        }
+
+        private int[] readInts(int count) {
+            int[] values = new int[count];
+            for (int i = 0; i < count; i++) {
+                values[i] = (int) readVarLong(mBuffer);
+            }
+            return values;
+        }
+
+        private int[] readSignedInts(int count) {
+            int[] values = new int[count];
+            for (int i = 0; i < count; i++) {
+                values[i] = (int) unzigzag(readVarLong(mBuffer));
+            }
+            return values;
+        }
+
+        private float[] readPowerToughnesses(int count) {
+            float[] values = new float[count];
+            for (int i = 0; i < count; i++) {
+                long value = readVarLong(mBuffer);
+                if (PT_FLOAT_BITS == value) {
+                    values[i] = Float.intBitsToFloat(mBuffer.getInt());
+                } else {
+                    values[i] = unzigzag(value >>> 1) / 2.0f;
+                }
+            }
+            return values;
+        }
+    }
+
+    /**
+     * Write a string as a dictionary index, adding it to the dictionary if it's new
+     *
+     * @param out        The column to write to
+     * @param dictionary The dictionary, in the order strings were added
+     * @param string     The string to write, which may be null
+     */
+    private static void writeDictionaryIndex(ByteArrayOutputStream out, LinkedHashMap<String, Integer> dictionary, String string) {
+        if (null == string) {
+            writeVarLong(out, 0);
+            return;
+        }
+        Integer index = dictionary.get(string);
+        if (null == index) {
+            index = dictionary.size() + 1;
+            dictionary.put(string, index);
+        }
+        writeVarLong(out, index);
+    }
+
+    /**
+     * Build a string column: the null rows, the offset table, then the strings
+     *
+     * @param strings The strings, which may be null
+     * @return The column
+     */
+    private static ByteArrayOutputStream stringColumn(ArrayList<String> strings) {
+        ByteArrayOutputStream column = new ByteArrayOutputStream();
+        ArrayList<Integer> nullRows = new ArrayList<>();
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        ByteBuffer offsets = ByteBuffer.allocate(4 * (strings.size() + 1));
+        for (int i = 0; i < strings.size(); i++) {
+            offsets.putInt(data.size());
+            if (null == strings.get(i)) {
+                nullRows.add(i);
+            } else {
+                byte[] bytes = strings.get(i).getBytes(StandardCharsets.UTF_8);
+                data.write(bytes, 0, bytes.length);
+            }
+        }
+        offsets.putInt(data.size());
+
+        writeVarLong(column, nullRows.size());
+        int lastNullRow = 0;
+        for (int nullRow : nullRows) {
+            writeVarLong(column, nullRow - lastNullRow);
+            lastNullRow = nullRow;
+        }
+        column.write(offsets.array(), 0, offsets.capacity());
+        column.write(data.toByteArray(), 0, data.size());
+        return column;
+    }
+
+    /**
+     * Write power or toughness. Whole and half numbers, which includes every
+     * sentinel, are written as twice their value shifted over a zero bit.
+     * Anything else is written as a flag and the float's bits
+     *
+     * @param out   The column to write to
+     * @param value The power or toughness
+     */
+    private static void writePowerToughness(ByteArrayOutputStream out, float value) {
+        long doubled = (long) (value * 2.0);
+        if (Math.abs(doubled) < (1L << 53) && Float.floatToIntBits(doubled / 2.0f) == Float.floatToIntBits(value)) {
+            writeVarLong(out, zigzag(doubled) << 1);
+        } else {
+            writeVarLong(out, PT_FLOAT_BITS);
+            int bits = Float.floatToIntBits(value);
+            out.write(bits >>> 24);
+            out.write(bits >>> 16);
+            out.write(bits >>> 8);
+            out.write(bits);
+        }
+    }
+
+    private static void writeExpansion(ByteArrayOutputStream out, Expansion expansion) {
+        writeString(out, expansion.mName_gatherer);
+        writeString(out, expansion.mCode_gatherer);
+        writeString(out, expansion.mCode_mtgi);
+        writeString(out, expansion.mName_tcgp);
+        writeString(out, expansion.mName_mkm);
+        writeVarLong(out, zigzag(expansion.mReleaseTimestamp));
+        out.write((expansion.mCanBeFoil ? 1 : 0) | (expansion.mIsOnlineOnly ? 2 : 0));
+        writeString(out, expansion.mBorderColor);
+        writeString(out, expansion.mDigest);
+        if (null == expansion.mExpansionImageURLs) {
+            writeVarLong(out, 0);
+        } else {
+            writeVarLong(out, expansion.mExpansionImageURLs.size() + 1);
+            for (String url : expansion.mExpansionImageURLs) {
+                writeString(out, url);
+            }
+        }
+    }
+
+    private static Expansion readExpansion(ByteBuffer in) {
+        Expansion expansion = new Expansion();
+        expansion.mName_gatherer = readString(in);
+        expansion.mCode_gatherer = readString(in);
+        expansion.mCode_mtgi = readString(in);
+        expansion.mName_tcgp = readString(in);
+        expansion.mName_mkm = readString(in);
+        expansion.mReleaseTimestamp = unzigzag(readVarLong(in));
+        int flags = in.get();
+        expansion.mCanBeFoil = 0 != (flags & 1);
+        expansion.mIsOnlineOnly = 0 != (flags & 2);
+        expansion.mBorderColor = readString(in);
+        expansion.mDigest = readString(in);
+        int numUrls = (int) readVarLong(in);
+        if (0 == numUrls) {
+            expansion.mExpansionImageURLs = null;
+        } else {
+            for (int i = 1; i < numUrls; i++) {
+                expansion.mExpansionImageURLs.add(readString(in));
+            }
+        }
+        return expansion;
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String string) {
+        if (null == string) {
+            writeVarLong(out, 0);
+        } else {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(out, bytes.length + 1);
+            out.write(bytes, 0, bytes.length);
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = (int) readVarLong(in);
+        if (0 == length) {
+            return null;
+        }
+        String string = decode(in, in.position(), length - 1);
+        in.position(in.position() + length - 1);
+        return string;
+    }
+
+    private static String decode(ByteBuffer buffer, int position, int length) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + position, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+        source.position(position);
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
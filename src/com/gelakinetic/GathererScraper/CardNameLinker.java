@@ -0,0 +1,276 @@
+package com.gelakinetic.GathererScraper;
+
+import com.gelakinetic.GathererScraper.JsonTypesGS.CardGS;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class adds links to card text for every card name it knows about, in a
+ * single pass over the text. All the names are loaded into an Aho-Corasick
+ * automaton once per expansion, so the cost of linking doesn't grow with the
+ * number of names
+ */
+class CardNameLinker {
+
+    /* Finds the other card in Battlebond's "Partner with" */
+    private static final Pattern PARTNER_PATTERN = Pattern.compile("Partner with ([^\\(<]+)\\s*[\\(<]");
+
+    /* Expansions where "Partner with" names are linked to the other card */
+    private static final HashSet<String> PARTNER_EXPANSIONS = new HashSet<>();
+
+    static {
+        PARTNER_EXPANSIONS.add("BBD");
+    }
+
+    /* Meld cards, which are linked wherever they are mentioned */
+    private static final Object[][] MELD_LINKS = {
+            {"Bruna, the Fading Light", 414304},
+            {"Gisela, the Broken Blade", 414319},
+            {"Brisela, Voice of Nightmares", 414305},
+
+            {"Graf Rats", 414386},
+            {"Midnight Scavengers", 414391},
+            {"Chittering Host", 414392},
+
+            {"Hanweir Battlements", 414511},
+            {"Hanweir Garrison", 414428},
+            {"Hanweir, the Writhing Township", 414429},
+    };
+
+    /* The linker for expansions which don't link partners, it never changes */
+    private static final CardNameLinker DEFAULT_LINKER = new CardNameLinker(false);
+
+    /**
+     * Something to link, and what to replace it with
+     */
+    private static class Link {
+        final String mName;
+        final String mReplacement;
+        /* Partners are only linked for the name after "Partner with", and only once */
+        final boolean mIsPartner;
+
+        Link(String name, String replacement, boolean isPartner) {
+            mName = name;
+            mReplacement = replacement;
+            mIsPartner = isPartner;
+        }
+    }
+
+    /**
+     * A node in the automaton
+     */
+    private static class Node {
+        final HashMap<Character, Node> mNext = new HashMap<>();
+        /* Where to continue when the next character doesn't match */
+        Node mFail;
+        /* The link which ends at this node, if any */
+        Link mLink;
+        /* The closest node down the fail chain with a link, if any */
+        Node mLinkChain;
+    }
+
+    /**
+     * A link found in the text, from mStart to mEnd exclusive
+     */
+    private static class Match {
+        final int mStart;
+        final int mEnd;
+        final Link mLink;
+
+        Match(int start, int end, Link link) {
+            mStart = start;
+            mEnd = end;
+            mLink = link;
+        }
+    }
+
+    private final Node mRoot = new Node();
+    private final boolean mLinkPartners;
+
+    /**
+     * Get a linker for an expansion
+     *
+     * @param code_gatherer The expansion's code
+     * @param scrapedCards  All the cards in the expansion, used to link partners
+     * @return A linker for the expansion
+     */
+    static CardNameLinker forExpansion(String code_gatherer, ArrayList<CardGS> scrapedCards) {
+        if (!PARTNER_EXPANSIONS.contains(code_gatherer)) {
+            return DEFAULT_LINKER;
+        }
+
+        CardNameLinker linker = new CardNameLinker(true);
+        for (CardGS card : scrapedCards) {
+            /* If multiple cards have the same name, the first one is linked */
+            linker.add(new Link(card.mName, uriLink(card.mName, card.mMultiverseId), true));
+        }
+        linker.build();
+        return linker;
+    }
+
+    /**
+     * Create a linker with the links which apply to every expansion. Call
+     * build() after adding any more links
+     *
+     * @param linkPartners true to link partners, false otherwise
+     */
+    private CardNameLinker(boolean linkPartners) {
+        mLinkPartners = linkPartners;
+        for (Object[] meld : MELD_LINKS) {
+            add(new Link((String) meld[0], uriLink((String) meld[0], (Integer) meld[1]), false));
+        }
+        add(new Link("AskUrza.com", "<a href=\"http://www.AskUrza.com\">AskUrza.com</a>", false));
+        if (!linkPartners) {
+            build();
+        }
+    }
+
+    /**
+     * Add a link to the trie. Names which were already added are left alone
+     *
+     * @param link The link to add
+     */
+    private void add(Link link) {
+        if (link.mName.isEmpty()) {
+            return;
+        }
+        Node node = mRoot;
+        for (int i = 0; i < link.mName.length(); i++) {
+            node = node.mNext.computeIfAbsent(link.mName.charAt(i), c -> new Node());
+        }
+        if (null == node.mLink) {
+            node.mLink = link;
+        }
+    }
+
+    /**
+     * Fill in the fail and link chains, breadth first
+     */
+    private void build() {
+        ArrayDeque<Node> queue = new ArrayDeque<>();
+        for (Node child : mRoot.mNext.values()) {
+            child.mFail = mRoot;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+            for (HashMap.Entry<Character, Node> entry : node.mNext.entrySet()) {
+                Node child = entry.getValue();
+                Node fail = node.mFail;
+                while (null != fail && !fail.mNext.containsKey(entry.getKey())) {
+                    fail = fail.mFail;
+                }
+                child.mFail = (null == fail) ? mRoot : fail.mNext.get(entry.getKey());
+                child.mLinkChain = (null != child.mFail.mLink) ? child.mFail : child.mFail.mLinkChain;
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * Add links to the text for meld cards, partners, and anything else known.
+     * Overlapping names are resolved by taking the leftmost, then the longest.
+     * Names which are already inside a link are left alone, so text which was
+     * linked before, like text from an old patch, can be linked again safely
+     *
+     * @param mText The card text, which may already have some links
+     * @return The card text with links
+     */
+    String linkify(String mText) {
+        if (mText == null) {
+            return null;
+        }
+
+        /* Use a regex to find the Partner name */
+        String partnerName = null;
+        if (mLinkPartners) {
+            Matcher matcher = PARTNER_PATTERN.matcher(mText);
+            if (matcher.find()) {
+                partnerName = matcher.group(1).trim();
+            }
+        }
+
+        /* Find everything to link in one pass */
+        ArrayList<Match> matches = null;
+        Node node = mRoot;
+        for (int i = 0; i < mText.length(); i++) {
+            char c = mText.charAt(i);
+            Node next;
+            while (null == (next = node.mNext.get(c)) && node != mRoot) {
+                node = node.mFail;
+            }
+            node = (null == next) ? mRoot : next;
+
+            for (Node found = (null != node.mLink) ? node : node.mLinkChain; null != found; found = found.mLinkChain) {
+                Link link = found.mLink;
+                if (link.mIsPartner) {
+                    /* Only link the first time the partner is named */
+                    if (!link.mName.equals(partnerName)) {
+                        continue;
+                    }
+                    partnerName = null;
+                }
+                if (null == matches) {
+                    matches = new ArrayList<>();
+                }
+                matches.add(new Match(i + 1 - link.mName.length(), i + 1, link));
+            }
+        }
+
+        if (null == matches) {
+            return mText;
+        }
+
+        /* Replace the leftmost, longest matches which don't overlap */
+        matches.sort((a, b) -> (a.mStart != b.mStart) ? Integer.compare(a.mStart, b.mStart) :
+                Integer.compare(b.mEnd, a.mEnd));
+        StringBuilder linked = new StringBuilder(mText.length() + 64 * matches.size());
+        int copied = 0;
+        int anchorStart = mText.indexOf("<a ");
+        int anchorEnd = getAnchorEnd(mText, anchorStart);
+        for (Match match : matches) {
+            /* Skip past the links which end before this match */
+            while (anchorStart >= 0 && anchorEnd <= match.mStart) {
+                anchorStart = mText.indexOf("<a ", anchorEnd);
+                anchorEnd = getAnchorEnd(mText, anchorStart);
+            }
+            if (anchorStart >= 0 && anchorStart < match.mEnd) {
+                /* This match is inside, or overlaps, an existing link */
+                continue;
+            }
+            if (match.mStart >= copied) {
+                linked.append(mText, copied, match.mStart).append(match.mLink.mReplacement);
+                copied = match.mEnd;
+            }
+        }
+        return linked.append(mText, copied, mText.length()).toString();
+    }
+
+    /**
+     * @param text        The text with the link
+     * @param anchorStart Where the link's opening tag starts, or -1
+     * @return Where the link's closing tag ends, or the end of the text if it
+     * isn't closed
+     */
+    private static int getAnchorEnd(String text, int anchorStart) {
+        if (anchorStart < 0) {
+            return -1;
+        }
+        int closeTag = text.indexOf("</a>", anchorStart);
+        return (closeTag < 0) ? text.length() : closeTag + "</a>".length();
+    }
+
+    /**
+     * @param name         The text of the link
+     * @param multiverseId The card to link to
+     * @return An HTML link to the card in the app
+     */
+    private static String uriLink(String name, int multiverseId) {
+        return "<a href=\"card://multiverseid/internal/" + multiverseId + "\">" + name + "</a>";
+    }
+}
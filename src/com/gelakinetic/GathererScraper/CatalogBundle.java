@@ -0,0 +1,393 @@
+package com.gelakinetic.GathererScraper;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * This class packs the catalog, which is the patches, the manifests, the
+ * legality file and the symbols, into one file with an index at the end, so a
+ * mirror downloads one file and a reader can map it and pull out one entry
+ * without reading the rest.
+ *
+ * The layout is:
+ * <pre>
+ * "GSCB" and a version int
+ * Entries, back to back
+ * The index: a count, then for each entry its name (a short length and
+ *            UTF-8 bytes), offset and length as longs, and MD5 digest
+ * The trailer: the index's offset as a long, its length as an int, then "GSCB"
+ * </pre>
+ * Numbers are big endian. Only the trailer is at a fixed place, the end.
+ *
+ * Updating a bundle is incremental. Entries whose digest hasn't changed stay
+ * where they are, and changed or new entries are appended after the old
+ * index, then a new index and trailer are written. The old index isn't
+ * touched until the new one is complete, and if the update fails the file is
+ * cut back to where it was. Once more than half the file is stale, the bundle
+ * is rewritten from scratch instead
+ */
+class CatalogBundle {
+
+    static final String BUNDLE_FILE_NAME = "catalog.bundle";
+
+    private static final byte[] MAGIC = {'G', 'S', 'C', 'B'};
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int TRAILER_SIZE = 16;
+    private static final int DIGEST_SIZE = 16;
+
+    /**
+     * One file in the bundle
+     */
+    static class Entry {
+        final String mName;
+        final long mOffset;
+        final long mLength;
+        final byte[] mDigest;
+
+        Entry(String name, long offset, long length, byte[] digest) {
+            mName = name;
+            mOffset = offset;
+            mLength = length;
+            mDigest = digest;
+        }
+    }
+
+    /**
+     * Bring a bundle up to date with the catalog in a directory
+     *
+     * @param filesDir   The directory with the manifests, legality.json, patches-v2 and symbols
+     * @param bundleFile The bundle to write or update
+     * @return The number of entries which were already in the bundle and reused
+     * @throws IOException If the catalog can't be read, or the bundle can't be written
+     */
+    static int update(File filesDir, File bundleFile) throws IOException {
+        /* Name every file in the catalog by its path from filesDir */
+        TreeMap<String, File> sources = new TreeMap<>();
+        addSource(sources, filesDir, GathererScraperUi.PATCH_FILE_NAME);
+        addSource(sources, filesDir, GathererScraperUi.DICTIONARY_PATCH_FILE_NAME);
+        addSource(sources, filesDir, GathererScraperUi.DELTA_PATCH_FILE_NAME);
+        addSource(sources, filesDir, GathererScraperUi.LEGAL_FILE_NAME);
+        addSources(sources, filesDir, GathererScraper.PATCH_DIR);
+        addSources(sources, filesDir, "symbols");
+
+        /* Digest everything, to see which entries changed */
+        LinkedHashMap<String, byte[]> digests = new LinkedHashMap<>();
+        long totalLength = 0;
+        for (Map.Entry<String, File> source : sources.entrySet()) {
+            digests.put(source.getKey(), digest(source.getValue()));
+            totalLength += source.getValue().length();
+        }
+
+        Map<String, Entry> oldEntries = null;
+        long oldLength = 0;
+        if (bundleFile.exists()) {
+            /* The old bundle isn't mapped, since some systems won't let a mapped file be changed */
+            try (FileChannel channel = FileChannel.open(bundleFile.toPath(), StandardOpenOption.READ)) {
+                oldEntries = readIndex(channel);
+                oldLength = channel.size();
+            } catch (IOException e) {
+                System.err.println("Rewriting unreadable bundle " + bundleFile.getName() + ": " + e.getMessage());
+            }
+        }
+
+        /* Work out what's reused, and how big the bundle would get */
+        ArrayList<Entry> entries = new ArrayList<>();
+        ArrayList<String> toAppend = new ArrayList<>();
+        long appendedLength = 0;
+        for (Map.Entry<String, byte[]> digest : digests.entrySet()) {
+            Entry oldEntry = (null == oldEntries) ? null : oldEntries.get(digest.getKey());
+            if (null != oldEntry && Arrays.equals(oldEntry.mDigest, digest.getValue())) {
+                entries.add(oldEntry);
+            } else {
+                toAppend.add(digest.getKey());
+                appendedLength += sources.get(digest.getKey()).length();
+            }
+        }
+
+        if (null == oldEntries || (oldLength + appendedLength) > 2 * totalLength) {
+            writeFresh(bundleFile, sources, digests);
+            return 0;
+        }
+        if (toAppend.isEmpty() && entries.size() == oldEntries.size()) {
+            return entries.size();
+        }
+
+        try (FileChannel channel = FileChannel.open(bundleFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            boolean finished = false;
+            try {
+                long position = oldLength;
+                for (String name : toAppend) {
+                    long length = copy(sources.get(name), channel, position);
+                    entries.add(new Entry(name, position, length, digests.get(name)));
+                    position += length;
+                }
+                writeIndex(channel, position, entries);
+                finished = true;
+            } finally {
+                if (!finished) {
+                    channel.truncate(oldLength);
+                }
+            }
+        }
+        return entries.size() - toAppend.size();
+    }
+
+    /**
+     * Write a whole new bundle to a temporary file, then rename it over the old one
+     *
+     * @param bundleFile The bundle to write
+     * @param sources    The files to bundle, by name
+     * @param digests    The files' digests, by name
+     * @throws IOException If the bundle can't be written
+     */
+    private static void writeFresh(File bundleFile, SortedMap<String, File> sources, Map<String, byte[]> digests)
+            throws IOException {
+        File tmpFile = File.createTempFile(bundleFile.getName() + ".", ".tmp", bundleFile.getAbsoluteFile().getParentFile());
+        try {
+            try (FileChannel channel = FileChannel.open(tmpFile.toPath(), StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.put(MAGIC).putInt(VERSION).flip();
+                writeFully(channel, header, 0);
+
+                ArrayList<Entry> entries = new ArrayList<>(sources.size());
+                long position = HEADER_SIZE;
+                for (Map.Entry<String, File> source : sources.entrySet()) {
+                    long length = copy(source.getValue(), channel, position);
+                    entries.add(new Entry(source.getKey(), position, length, digests.get(source.getKey())));
+                    position += length;
+                }
+                writeIndex(channel, position, entries);
+            }
+            GathererScraper.replaceAtomically(tmpFile, bundleFile);
+        } finally {
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * Write the index and trailer, making sure everything before the trailer
+     * is on disk before the trailer is
+     *
+     * @param channel  The bundle
+     * @param position Where to write the index
+     * @param entries  The entries
+     * @throws IOException If the index can't be written
+     */
+    private static void writeIndex(FileChannel channel, long position, List<Entry> entries) throws IOException {
+        ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+        DataOutputStream index = new DataOutputStream(indexBytes);
+        index.writeInt(entries.size());
+        for (Entry entry : entries) {
+            byte[] name = entry.mName.getBytes(StandardCharsets.UTF_8);
+            index.writeShort(name.length);
+            index.write(name);
+            index.writeLong(entry.mOffset);
+            index.writeLong(entry.mLength);
+            index.write(entry.mDigest);
+        }
+        index.flush();
+        writeFully(channel, ByteBuffer.wrap(indexBytes.toByteArray()), position);
+        channel.force(false);
+
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+        trailer.putLong(position).putInt(indexBytes.size()).put(MAGIC).flip();
+        long end = position + indexBytes.size();
+        writeFully(channel, trailer, end);
+        channel.truncate(end + TRAILER_SIZE);
+        channel.force(true);
+    }
+
+    /**
+     * This class reads a bundle by mapping it. Entries are returned as slices
+     * of the map, so nothing is copied until it's read
+     */
+    static class Reader implements Closeable {
+        private final FileChannel mChannel;
+        private final MappedByteBuffer mMap;
+        private final Map<String, Entry> mEntries;
+
+        /**
+         * @param bundleFile The bundle to read
+         * @throws IOException If the bundle can't be mapped, or is malformed
+         */
+        Reader(File bundleFile) throws IOException {
+            mChannel = FileChannel.open(bundleFile.toPath(), StandardOpenOption.READ);
+            try {
+                mEntries = readIndex(mChannel);
+                mMap = mChannel.map(FileChannel.MapMode.READ_ONLY, 0, mChannel.size());
+            } catch (IOException | RuntimeException e) {
+                mChannel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * @return The names of every entry
+         */
+        Set<String> getNames() {
+            return Collections.unmodifiableSet(mEntries.keySet());
+        }
+
+        /**
+         * @param name An entry's name, like "patches-v2/DOM.json.gzip"
+         * @return The entry's bytes, or null if there's no such entry
+         */
+        ByteBuffer get(String name) {
+            Entry entry = mEntries.get(name);
+            if (null == entry) {
+                return null;
+            }
+            ByteBuffer slice = mMap.duplicate();
+            slice.position((int) entry.mOffset);
+            slice.limit((int) (entry.mOffset + entry.mLength));
+            return slice.slice();
+        }
+
+        /**
+         * @param name An entry's name
+         * @return true if the entry exists and its bytes match its digest
+         */
+        boolean verify(String name) {
+            ByteBuffer bytes = get(name);
+            if (null == bytes) {
+                return false;
+            }
+            MessageDigest md5 = GathererScraper.md5();
+            md5.update(bytes);
+            return Arrays.equals(md5.digest(), mEntries.get(name).mDigest);
+        }
+
+        @Override
+        public void close() throws IOException {
+            mChannel.close();
+        }
+    }
+
+    /**
+     * Read a bundle's index
+     *
+     * @param channel The bundle
+     * @return The entries, by name, in index order
+     * @throws IOException If the bundle is malformed
+     */
+    private static Map<String, Entry> readIndex(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < HEADER_SIZE + TRAILER_SIZE || size > Integer.MAX_VALUE) {
+            throw new IOException("Not a bundle");
+        }
+        ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+        ByteBuffer trailer = readFully(channel, size - TRAILER_SIZE, TRAILER_SIZE);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (header.get(i) != MAGIC[i] || trailer.get(TRAILER_SIZE - MAGIC.length + i) != MAGIC[i]) {
+                throw new IOException("Not a bundle");
+            }
+        }
+        if (header.getInt(MAGIC.length) != VERSION) {
+            throw new IOException("Unknown bundle version");
+        }
+
+        long indexOffset = trailer.getLong();
+        int indexLength = trailer.getInt();
+        if (indexOffset < HEADER_SIZE || indexLength < 4 || indexOffset + indexLength != size - TRAILER_SIZE) {
+            throw new IOException("Malformed bundle index");
+        }
+        ByteBuffer index = readFully(channel, indexOffset, indexLength);
+        try {
+            int count = index.getInt();
+            LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                byte[] name = new byte[index.getShort() & 0xFFFF];
+                index.get(name);
+                long offset = index.getLong();
+                long length = index.getLong();
+                byte[] digest = new byte[DIGEST_SIZE];
+                index.get(digest);
+                if (offset < HEADER_SIZE || length < 0 || offset + length > indexOffset) {
+                    throw new IOException("Malformed bundle index");
+                }
+                String nameString = new String(name, StandardCharsets.UTF_8);
+                entries.put(nameString, new Entry(nameString, offset, length, digest));
+            }
+            return entries;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Malformed bundle index", e);
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void addSource(Map<String, File> sources, File filesDir, String name) {
+        File file = new File(filesDir, name);
+        if (file.isFile()) {
+            sources.put(name, file);
+        }
+    }
+
+    private static void addSources(Map<String, File> sources, File filesDir, String dirName) {
+        File[] files = new File(filesDir, dirName).listFiles();
+        if (null == files) {
+            return;
+        }
+        for (File file : files) {
+            /* Skip files which are still being written */
+            if (file.isFile() && !file.getName().endsWith(".tmp") && !file.getName().endsWith(".staging")) {
+                sources.put(dirName + "/" + file.getName(), file);
+            }
+        }
+    }
+
+    /**
+     * Copy a whole file into the bundle
+     *
+     * @param source   The file to copy
+     * @param channel  The bundle
+     * @param position Where to copy it to
+     * @return The number of bytes copied
+     * @throws IOException If the file can't be copied
+     */
+    private static long copy(File source, FileChannel channel, long position) throws IOException {
+        try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            long length = in.size();
+            long copied = 0;
+            while (copied < length) {
+                copied += in.transferTo(copied, length - copied, channel.position(position + copied));
+            }
+            return length;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static byte[] digest(File file) throws IOException {
+        MessageDigest md5 = GathererScraper.md5();
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                md5.update(buffer, 0, read);
+            }
+        }
+        return md5.digest();
+    }
+}
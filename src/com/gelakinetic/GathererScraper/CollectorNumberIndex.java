@@ -0,0 +1,188 @@
+package com.gelakinetic.GathererScraper;
+
+import com.gelakinetic.GathererScraper.JsonTypes.Card;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * This class holds the collector's numbers from an old patch, to look up by
+ * multiverse ID and name while re-scraping. Only the multiverse ID, name and
+ * number of each card are read from the patch, everything else is skipped
+ * over by the tokenizer without being turned into objects. The IDs are kept
+ * sorted in an int[], so a lookup is a binary search with no boxing or string
+ * building
+ */
+class CollectorNumberIndex {
+
+    private final int[] mMultiverseIds;
+    private final String[] mNames;
+    private final String[] mNumbers;
+
+    private CollectorNumberIndex(int[] multiverseIds, String[] names, String[] numbers) {
+        mMultiverseIds = multiverseIds;
+        mNames = names;
+        mNumbers = numbers;
+    }
+
+    /**
+     * Read the collector's numbers from a gzipped patch
+     *
+     * @param patchFile The patch to read
+     * @return The index
+     * @throws IOException If the patch can't be read
+     */
+    static CollectorNumberIndex read(File patchFile) throws IOException {
+        int size = 0;
+        int[] multiverseIds = new int[256];
+        String[] names = new String[256];
+        String[] numbers = new String[256];
+
+        try (JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(patchFile), 64 * 1024), StandardCharsets.UTF_8)))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!"cards".equals(reader.nextName()) || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    int multiverseId = 0;
+                    String name = null;
+                    String number = null;
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String field = reader.nextName();
+                        if (reader.peek() == JsonToken.NULL) {
+                            reader.nextNull();
+                            continue;
+                        }
+                        switch (field) {
+                            case "multiverseId":
+                                multiverseId = reader.nextInt();
+                                break;
+                            case "name":
+                                name = reader.nextString();
+                                break;
+                            case "number":
+                                number = reader.nextString();
+                                break;
+                            default:
+                                reader.skipValue();
+                                break;
+                        }
+                    }
+                    reader.endObject();
+
+                    if (null != name) {
+                        if (size == multiverseIds.length) {
+                            multiverseIds = Arrays.copyOf(multiverseIds, size * 2);
+                            names = Arrays.copyOf(names, size * 2);
+                            numbers = Arrays.copyOf(numbers, size * 2);
+                        }
+                        multiverseIds[size] = multiverseId;
+                        names[size] = name;
+                        numbers[size] = number;
+                        size++;
+                    }
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+        } catch (IllegalStateException | NumberFormatException e) {
+            /* Thrown by the reader when the patch isn't shaped like a patch */
+            throw new IOException("Malformed patch " + patchFile.getName(), e);
+        }
+        return build(multiverseIds, names, numbers, size);
+    }
+
+    /**
+     * Index the collector's numbers of cards which were already read, so the
+     * patch doesn't have to be read again
+     *
+     * @param cards The cards from a patch
+     * @return The index
+     */
+    static CollectorNumberIndex fromCards(List<? extends Card> cards) {
+        int size = 0;
+        int[] multiverseIds = new int[cards.size()];
+        String[] names = new String[cards.size()];
+        String[] numbers = new String[cards.size()];
+        for (Card card : cards) {
+            if (null != card.mName) {
+                multiverseIds[size] = card.mMultiverseId;
+                names[size] = card.mName;
+                numbers[size] = card.mNumber;
+                size++;
+            }
+        }
+        return build(multiverseIds, names, numbers, size);
+    }
+
+    /**
+     * @param multiverseIds The cards' multiverse IDs, in patch order
+     * @param names         The cards' names, in patch order
+     * @param numbers       The cards' collector's numbers, in patch order
+     * @param size          How many cards there are
+     * @return The index, sorted by multiverse ID
+     */
+    private static CollectorNumberIndex build(int[] multiverseIds, String[] names, String[] numbers, int size) {
+        /* Patches are sorted by collector's number, so sort by multiverse ID */
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        final int[] unsortedIds = multiverseIds;
+        Arrays.sort(order, (a, b) -> Integer.compare(unsortedIds[a], unsortedIds[b]));
+
+        int[] sortedIds = new int[size];
+        String[] sortedNames = new String[size];
+        String[] sortedNumbers = new String[size];
+        for (int i = 0; i < size; i++) {
+            sortedIds[i] = multiverseIds[order[i]];
+            sortedNames[i] = names[order[i]];
+            sortedNumbers[i] = numbers[order[i]];
+        }
+        return new CollectorNumberIndex(sortedIds, sortedNames, sortedNumbers);
+    }
+
+    /**
+     * @param multiverseId The card's multiverse ID
+     * @param name         The card's name
+     * @return The card's collector's number, or null if it isn't in the index
+     */
+    String get(int multiverseId, String name) {
+        /* Find the first card with this ID. Split cards have a few */
+        int low = 0;
+        int high = mMultiverseIds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mMultiverseIds[mid] < multiverseId) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        /* If a card is in the patch twice, the last one wins */
+        String number = null;
+        for (int i = low; i < mMultiverseIds.length && mMultiverseIds[i] == multiverseId; i++) {
+            if (mNames[i].equals(name)) {
+                number = mNumbers[i];
+            }
+        }
+        return number;
+    }
+
+    /**
+     * @return The number of cards in the index
+     */
+    int size() {
+        return mMultiverseIds.length;
+    }
+}
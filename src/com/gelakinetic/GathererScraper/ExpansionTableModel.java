@@ -1,5 +1,9 @@
 package com.gelakinetic.GathererScraper;
 
+import com.gelakinetic.GathererScraper.JsonTypes.DictionaryManifest;
+import com.gelakinetic.GathererScraper.JsonTypes.DictionaryManifest.DictionaryManifestEntry;
+import com.gelakinetic.GathererScraper.JsonTypes.DeltaManifest;
+import com.gelakinetic.GathererScraper.JsonTypes.DeltaManifest.DeltaManifestEntry;
 import com.gelakinetic.GathererScraper.JsonTypes.Expansion;
 import com.gelakinetic.GathererScraper.JsonTypes.Manifest;
 import com.gelakinetic.GathererScraper.JsonTypes.Manifest.ManifestEntry;
@@ -358,6 +362,84 @@ public class ExpansionTableModel extends AbstractTableModel {
         GathererScraper.writeFile(manifest, outFile, false);
     }
 
+    /**
+     * Write a manifest for the patches encoded with the given dictionary.
+     * Patches which are missing, or encoded with a different dictionary, are
+     * left out
+     *
+     * @param outFile    The file to write to
+     * @param patchDir   The directory with the patches
+     * @param dictionary The dictionary the patches are encoded with
+     * @throws IOException If the write failed
+     */
+    public void writeDictionaryManifestFile(File outFile, File patchDir, PatchDictionary dictionary) throws IOException {
+
+        String baseUrl = "https://raw.githubusercontent.com/AEFeinstein/GathererScraper/" + GathererScraper.getGitBranch() + "/patches-v2/";
+
+        DictionaryManifest manifest = new DictionaryManifest();
+        manifest.mTimestamp = getTodayTimestamp();
+        manifest.mDictionaryId = dictionary.getId();
+        manifest.mDictionaryURL = baseUrl + PatchDictionary.DICTIONARY_FILE_NAME;
+        ArrayList<String> setCodesAdded = new ArrayList<>();
+
+        for (ExpansionGS exp : mExpansions) {
+            if (exp.isScraped() && !setCodesAdded.contains(exp.mCode_gatherer)
+                    && dictionary.isEncodedWith(new File(patchDir, exp.mCode_gatherer + PatchDictionary.PATCH_EXTENSION))) {
+                DictionaryManifestEntry entry = manifest.new DictionaryManifestEntry();
+                entry.mCode = exp.mCode_gatherer;
+                entry.mURL = baseUrl + exp.mCode_gatherer + PatchDictionary.PATCH_EXTENSION;
+                entry.mDigest = exp.mDigest;
+                manifest.mPatches.add(entry);
+                setCodesAdded.add(exp.mCode_gatherer);
+            }
+        }
+
+        Collections.sort(manifest.mPatches);
+        GathererScraper.writeFile(manifest, outFile, false);
+    }
+
+    /**
+     * Write a manifest for the delta patches. Only deltas which make the
+     * current patch are listed, older ones are left out
+     *
+     * @param outFile  The file to write to
+     * @param patchDir The directory with the patches and deltas
+     * @throws IOException If the write failed
+     */
+    public void writeDeltaManifestFile(File outFile, File patchDir) throws IOException {
+
+        String baseUrl = "https://raw.githubusercontent.com/AEFeinstein/GathererScraper/" + GathererScraper.getGitBranch() + "/patches-v2/";
+
+        DeltaManifest manifest = new DeltaManifest();
+        manifest.mTimestamp = getTodayTimestamp();
+        ArrayList<String> setCodesAdded = new ArrayList<>();
+
+        for (ExpansionGS exp : mExpansions) {
+            File deltaFile = new File(patchDir, exp.mCode_gatherer + PatchDelta.DELTA_EXTENSION);
+            if (exp.isScraped() && !setCodesAdded.contains(exp.mCode_gatherer) && deltaFile.exists()) {
+                String[] digests;
+                try {
+                    digests = PatchDelta.readDigests(deltaFile);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    continue;
+                }
+                if (digests[1].equals(exp.mDigest)) {
+                    DeltaManifestEntry entry = manifest.new DeltaManifestEntry();
+                    entry.mCode = exp.mCode_gatherer;
+                    entry.mURL = baseUrl + deltaFile.getName();
+                    entry.mBaseDigest = digests[0];
+                    entry.mDigest = digests[1];
+                    manifest.mDeltas.add(entry);
+                    setCodesAdded.add(exp.mCode_gatherer);
+                }
+            }
+        }
+
+        Collections.sort(manifest.mDeltas);
+        GathererScraper.writeFile(manifest, outFile, false);
+    }
+
 	static boolean containsMultipleCodes(ArrayList<ExpansionGS> mExpansions2, String mCode_gatherer) {
 		int matches = 0;
 		for(ExpansionGS exp : mExpansions2) {
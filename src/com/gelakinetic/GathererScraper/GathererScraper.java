@@ -2,17 +2,25 @@ package com.gelakinetic.GathererScraper;
 
 import com.gelakinetic.GathererScraper.JsonTypes.Card;
 import com.gelakinetic.GathererScraper.JsonTypes.Card.ForeignPrinting;
+import com.gelakinetic.GathererScraper.JsonTypes.ForeignPrintingList;
+import com.gelakinetic.GathererScraper.JsonTypes.Language;
 import com.gelakinetic.GathererScraper.JsonTypes.Patch;
 import com.gelakinetic.GathererScraper.JsonTypesGS.CardGS;
+import com.gelakinetic.GathererScraper.JsonTypesGS.ColorMask;
+import com.gelakinetic.GathererScraper.JsonTypesGS.CompactCard;
 import com.gelakinetic.GathererScraper.JsonTypesGS.ExpansionGS;
+import com.gelakinetic.GathererScraper.JsonTypesGS.StringPool;
 import com.gelakinetic.mtgfam.helpers.database.CardDbAdapter;
 import com.google.common.net.PercentEscaper;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonWriter;
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.imgscalr.Scalr;
 import org.imgscalr.Scalr.Method;
+import org.jsoup.Connection;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
@@ -21,18 +29,23 @@ import org.jsoup.select.Elements;
 import java.awt.image.BufferedImage;
 import java.io.*;
 import java.net.URL;
-import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 import javax.imageio.ImageIO;
 
@@ -46,12 +59,32 @@ import javax.imageio.ImageIO;
 public class GathererScraper {
 
     public static final String PATCH_DIR = "patches-v2";
-    private static final Pattern BATTLEBOND_PATTERN = Pattern.compile("Partner with ([^\\(<]+)\\s*[\\(<]");
 	private static final String SYMBOL_DIR = "symbols";
 
     // Create a Pattern object
 	private static final Pattern MULTIVERSE_ID_PATTERN = Pattern.compile("multiverseid=([0-9]+)\"");
 
+    /* Reads and writes all the JSON files. The JSON types have hand written adapters, anything else uses the naming strategy */
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapterFactory(new JsonTypeAdapterFactory())
+            .setFieldNamingStrategy(new PrefixedFieldNamingStrategy("m"))
+            .disableHtmlEscaping()
+            .setPrettyPrinting()
+            .create();
+
+    /* How much to buffer, in chars and compressed bytes, when writing files */
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    /* Shares the low cardinality card fields across every card scraped */
+    private static final StringPool STRING_POOL = new StringPool();
+
+    /* How far to move duplicated collector's numbers. MTGI's numbers for ZEN and SVT basics are weird */
+    private static final HashMap<String, Integer> DUPLICATE_NUMBER_OFFSETS = new HashMap<>();
+    static {
+        DUPLICATE_NUMBER_OFFSETS.put("ZEN", 20);
+        DUPLICATE_NUMBER_OFFSETS.put("SVT", 43);
+    }
+
     /**
      * This function scrapes a list of all expansions from Gatherer
      *
@@ -78,45 +111,49 @@ public class GathererScraper {
      * This function scrapes all cards from a given expansion and posts updated
      * to UI
      *
+     * When scraping incrementally, only the expansion's card list is fetched at
+     * first. If every listed card is already in the old patch, the old patch's
+     * cards are returned as-is and no card pages are fetched. Otherwise only
+     * the cards which are new, or whose names changed, are scraped, and the
+     * rest are reused from the old patch. Cards which are gone from Gatherer
+     * are only dropped by a full scrape
+     *
      * @param exp               The expansion to scrape
      * @param mAllMultiverseIds
      * @param gathererScraperUi The UI to post updates to
+     * @param writeBehind       Where to send expansion symbols to be written
+     * @param incremental       true to reuse cards from the old patch, false to scrape everything
+     * @param pageCache         What was parsed from each card page last time, or null to parse every page
+     * @param journal           Where to record each card page scraped, and where to find pages
+     *                          scraped before resuming. May be null
      * @return An ArrayList of CardGS objects for all cards scraped
      * @throws IOException Thrown if the Internet breaks
      */
-    public static ArrayList<CardGS> scrapeExpansion(ExpansionGS exp, GathererScraperUi ui, HashSet<Integer> mAllMultiverseIds) {
-
-        MessageDigest messageDigest;
+    public static ArrayList<CardGS> scrapeExpansion(ExpansionGS exp, GathererScraperUi ui, MultiverseIdSet mAllMultiverseIds,
+                                                    WriteBehind writeBehind, boolean incremental, PageCache pageCache,
+                                                    ScrapeJournal journal) {
+
+        File oldPatchFile = new File(PATCH_DIR, exp.mCode_gatherer + ".json.gzip");
+
+        /* Get the card numbers from the old patch, just in case. When scraping
+         * incrementally the whole cards are needed anyway, so the patch is read
+         * once and the numbers are indexed from its cards
+         */
+        CollectorNumberIndex cachedCollectorsNumbers = null;
+        ArrayList<Card> oldCards = null;
         try {
-            messageDigest = MessageDigest.getInstance("MD5");
-        } catch (NoSuchAlgorithmException e) {
-            /* This should never happen */
-            return null;
-        }
-
-
-        /* Get the card numbers from the old patch, just in case */
-        HashMap<String, String> cachedCollectorsNumbers = null;
-        try {
-            File oldPatchFile = new File(PATCH_DIR, exp.mCode_gatherer + ".json.gzip");
-            FileInputStream oldFileInputStream = new FileInputStream(oldPatchFile);
-            GZIPInputStream oldGZIPInputStream = new GZIPInputStream(oldFileInputStream);
-            InputStreamReader oldInputStreamReader = new InputStreamReader(oldGZIPInputStream, StandardCharsets.UTF_8);
-
-            Gson gson = GathererScraper.getGson();
-
-            Patch patch = gson.fromJson(oldInputStreamReader, Patch.class);
-
-            cachedCollectorsNumbers = new HashMap<>();
-            for (Card card : patch.mCards) {
-                /* Name is the key, collectors number is the value */
-                cachedCollectorsNumbers.put(card.mMultiverseId + card.mName, card.mNumber);
+            if (incremental) {
+                oldCards = readPatchCards(oldPatchFile);
+                cachedCollectorsNumbers = CollectorNumberIndex.fromCards(oldCards);
+            } else {
+                cachedCollectorsNumbers = CollectorNumberIndex.read(oldPatchFile);
             }
         } catch (Exception e) {
             System.err.println("Couldn't open old patch for " + exp.mName_gatherer);
         }
 
         ArrayList<CardGS> cardsArray = new ArrayList<>();
+        HashSet<CardGS> listedCards = new HashSet<>();
 
         HashMap<String, Integer> multiverseMap = new HashMap<>();
 
@@ -157,7 +194,7 @@ public class GathererScraper {
                 CardGS card = new CardGS(e.ownText(), exp.mCode_gatherer, Integer.parseInt(e.attr("href").split("=")[1]));
                 multiverseMap.put(card.mName, card.mMultiverseId);
 
-                if (cardsArray.contains(card)) {
+                if (!listedCards.add(card)) {
                     loop = false;
                 } else {
                     cardsArray.add(card);
@@ -166,29 +203,87 @@ public class GathererScraper {
             pageNum++;
         }
 
-        ArrayList<CardGS> scrapedCards = new ArrayList<>(cardsArray.size());
-        for (CardGS c : cardsArray) {
+        /* Cards are kept packed until the whole expansion is scraped, see CompactCard */
+        ArrayList<CompactCard> scrapedCards = new ArrayList<>(cardsArray.size());
+        /* Hashed indexes of what was scraped, so dedupe doesn't rescan scrapedCards */
+        HashSet<CompactCard> scrapedCardSet = new HashSet<>(cardsArray.size() * 2);
+        HashSet<Integer> scrapedMultiverseIds = new HashSet<>(cardsArray.size() * 2);
+
+        if (null != oldCards && !cardsArray.isEmpty()) {
+            /* Group the old cards by multiverse ID. Split and flip cards have a few per ID */
+            ArrayList<CompactCard> storedCards = new ArrayList<>(oldCards.size());
+            HashMap<Integer, ArrayList<CompactCard>> storedFaces = new HashMap<>();
+            for (Card oldCard : oldCards) {
+                CompactCard card = new CompactCard(oldCard, STRING_POOL);
+                storedCards.add(card);
+                storedFaces.computeIfAbsent(card.getMultiverseId(), k -> new ArrayList<>()).add(card);
+            }
+            oldCards = null;
 
-            // Check to see if this card was already scraped as part of some other page (DFC, alt-art, whatever)
-            boolean alreadyScraped = false;
-            for(CardGS alreadyScrapedCard : scrapedCards)
-            {
-                if(alreadyScrapedCard.mMultiverseId == c.mMultiverseId)
-                {
-                    alreadyScraped = true;
-                    break;
+            /* Anything listed which doesn't match the old patch has to be scraped */
+            HashSet<Integer> changedMultiverseIds = new HashSet<>();
+            for (CardGS c : cardsArray) {
+                if (!isListedName(storedFaces.get(c.mMultiverseId), c.mName)) {
+                    changedMultiverseIds.add(c.mMultiverseId);
                 }
             }
 
+            if (changedMultiverseIds.isEmpty()) {
+                /* Nothing changed, so return the old patch's cards just like they were */
+                ArrayList<CardGS> unchangedCards = new ArrayList<>(storedCards.size());
+                for (CompactCard card : storedCards) {
+                    unchangedCards.add(card.unpack());
+                    mAllMultiverseIds.add(card.getMultiverseId());
+                }
+                ui.setLastCardScraped(exp.mCode_gatherer + ": unchanged");
+                return unchangedCards;
+            }
+
+            /* Reuse the cards which didn't change. Finishing them again is
+             * safe, links aren't added twice and sorting keeps their order
+             */
+            for (CompactCard card : storedCards) {
+                if (!changedMultiverseIds.contains(card.getMultiverseId()) && scrapedCardSet.add(card)) {
+                    scrapedCards.add(card);
+                    scrapedMultiverseIds.add(card.getMultiverseId());
+                    mAllMultiverseIds.add(card.getMultiverseId());
+                }
+            }
+            System.out.println(exp.mName_gatherer + ": reusing " + scrapedCards.size() + " cards, scraping "
+                    + changedMultiverseIds.size() + " multiverse IDs");
+        }
+
+        for (CardGS c : cardsArray) {
+
+            // Check to see if this card was already scraped as part of some other page (DFC, alt-art, whatever)
             // If this is a new multiverse ID, scrape it
-            if(!alreadyScraped)
+            if(!scrapedMultiverseIds.contains(c.mMultiverseId))
             {
-                ArrayList<CardGS> tmpScrapedCards = scrapePage(CardGS.getUrl(c.mMultiverseId), exp, multiverseMap, cachedCollectorsNumbers);
+                /* If this page was scraped before resuming, don't scrape it again.
+                 * Unless its expansion symbol wasn't saved before the run died,
+                 * since the symbol is downloaded from the page
+                 */
+                ArrayList<CardGS> tmpScrapedCards = (null == journal) ? null : journal.getScrapedPage(exp.mCode_gatherer, c.mMultiverseId);
+                if (null != tmpScrapedCards && !addExpansionSymbolUrls(exp, tmpScrapedCards)) {
+                    tmpScrapedCards = null;
+                }
+                if (null == tmpScrapedCards) {
+                    tmpScrapedCards = scrapePage(CardGS.getUrl(c.mMultiverseId), exp, multiverseMap, cachedCollectorsNumbers, pageCache, writeBehind);
+                    if (null != tmpScrapedCards && null != journal) {
+                        try {
+                            journal.pageScraped(exp.mCode_gatherer, c.mMultiverseId, tmpScrapedCards);
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                }
 
                 if (tmpScrapedCards != null) {
                     for (CardGS tmpCard : tmpScrapedCards) {
-                        if (!scrapedCards.contains(tmpCard)) {
-                            scrapedCards.add(tmpCard);
+                        CompactCard compactCard = new CompactCard(tmpCard, STRING_POOL);
+                        if (scrapedCardSet.add(compactCard)) {
+                            scrapedCards.add(compactCard);
+                            scrapedMultiverseIds.add(tmpCard.mMultiverseId);
                             mAllMultiverseIds.add(tmpCard.mMultiverseId);
                         }
                     }
@@ -197,78 +292,108 @@ public class GathererScraper {
             }
         }
 
+        return finishExpansion(exp, scrapedCards);
+    }
+
+    /**
+     * @param faces      The cards from the old patch with a listed card's multiverse ID, may be null
+     * @param listedName The card's name in the expansion's card list
+     * @return true if the listed card is one of the faces, false if it's new or changed
+     */
+    private static boolean isListedName(ArrayList<CompactCard> faces, String listedName) {
+        if (null == faces) {
+            return false;
+        }
+        for (CompactCard face : faces) {
+            if (face.getName().equals(listedName)) {
+                return true;
+            }
+        }
+        /* Split cards are listed by both halves' names */
+        for (String half : listedName.split(" // ")) {
+            boolean found = false;
+            for (CompactCard face : faces) {
+                if (face.getName().equals(half)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read all the cards from a gzipped patch
+     *
+     * @param patchFile The patch to read
+     * @return The cards in the patch, in the patch's order
+     * @throws IOException If the patch can't be read
+     */
+    private static ArrayList<Card> readPatchCards(File patchFile) throws IOException {
+        try (Reader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(patchFile), 64 * 1024), StandardCharsets.UTF_8))) {
+            Patch patch = GSON.fromJson(reader, Patch.class);
+            if (null == patch || null == patch.mCards) {
+                throw new IOException("No cards in " + patchFile.getName());
+            }
+            return patch.mCards;
+        } catch (JsonParseException e) {
+            throw new IOException("Malformed patch " + patchFile.getName(), e);
+        }
+    }
+
+    /**
+     * Once every card in an expansion is known, unpack the cards, link card
+     * names in the text, fill in and fix up collector's numbers, calculate
+     * color identities and sort the cards
+     *
+     * @param exp         The expansion the cards are in
+     * @param packedCards Every card in the expansion, packed
+     * @return The cards, finished and sorted
+     */
+    private static ArrayList<CardGS> finishExpansion(ExpansionGS exp, ArrayList<CompactCard> packedCards) {
+
+        ArrayList<CardGS> scrapedCards = new ArrayList<>(packedCards.size());
+        for (CompactCard packedCard : packedCards) {
+            scrapedCards.add(packedCard.unpack());
+        }
+
         // Now that all the cards and multiverse IDs are known, linkify text
+        CardNameLinker linker = CardNameLinker.forExpansion(exp.mCode_gatherer, scrapedCards);
         for(CardGS card : scrapedCards) {
-            card.mText = linkifyText(card.mText, exp.mCode_gatherer, scrapedCards);
+            card.mText = linker.linkify(card.mText);
         }
 
+        boolean needsNumbers = false;
         if (scrapedCards.isEmpty()) {
             System.err.print("Scrape failed " + exp.mName_gatherer);
         } else if (scrapedCards.get(0).mNumber.length() < 1) {
-            Collections.sort(scrapedCards);
-            for (int i = 0; i < scrapedCards.size(); i++) {
-                scrapedCards.get(i).mNumber = "" + (i + 1);
-            }
+            needsNumbers = true;
         }
 
-        /* Attempt to renumber consecutive cards with alt-art, but the same artist */
+        /* Sort once. Everything below keeps the list in sorted order */
         try {
             Collections.sort(scrapedCards);
         } catch (IllegalArgumentException e) {
             e.printStackTrace();
             System.err.println(exp.mName_gatherer + " SORT FAILURE");
         }
-        for (int i = 0; i < scrapedCards.size() - 1; i++) {
-            if (scrapedCards.get(i).mNumber.equals(scrapedCards.get(i + 1).mNumber) &&
-                    scrapedCards.get(i).mName.equals(scrapedCards.get(i + 1).mName)) {
-                try {
-                    /* Adjust the number, resort the collection, step back the array
-                     * This should properly number more than two of the same number
-                     */
-                    boolean changed = false;
-                    try {
-                        switch (scrapedCards.get(i + 1).mExpansion) {
-                            case "ZEN":
-                                /* Increment the number in the string. MTGI's numbers for ZEN basics are weird */
-                                scrapedCards.get(i + 1).mNumber = (Integer.parseInt(scrapedCards.get(i + 1).mNumber) + 20) + "";
-                                changed = true;
-                                break;
-                            case "SVT":
-                                /* Increment the number in the string. MTGI's numbers for SVT basics are weird */
-                                scrapedCards.get(i + 1).mNumber = (Integer.parseInt(scrapedCards.get(i + 1).mNumber) + 43) + "";
-                                changed = true;
-                                break;
-                            default:
-                                /* Do nothing. Allow other cards to have the same number */
-                                break;
-                        }
-                    } catch (NumberFormatException e) {
-                        /* Guess it has a letter in there, increment that instead */
-                        char letter = scrapedCards.get(i + 1).mNumber.charAt(
-                                scrapedCards.get(i + 1).mNumber.length() - 1);
-                        scrapedCards.get(i + 1).mNumber = scrapedCards.get(i + 1).mNumber
-                                .substring(0, scrapedCards.get(i + 1).mNumber.length() - 1) + (char) (letter + 1);
-                        changed = true;
-                    }
-
-                    if(changed) {
-                        Collections.sort(scrapedCards);
-                        i--;
-                    }
-                } catch (Exception e) {
-                    System.err.println(String.format("Muy Problemo [%3s] %s: %s",
-                            scrapedCards.get(i).mExpansion,
-                            scrapedCards.get(i).mName,
-                            e.toString()));
-                }
+        if (needsNumbers) {
+            for (int i = 0; i < scrapedCards.size(); i++) {
+                scrapedCards.get(i).mNumber = "" + (i + 1);
             }
         }
 
+        /* Attempt to renumber consecutive cards with alt-art, but the same artist */
+        scrapedCards = renumberDuplicates(scrapedCards);
+
         /* Calculate color identities. This is done here because both halves of split cards must be known */
         calculateColorIdentities(scrapedCards);
 
-        /* Debug check for cards with the same number */
-        Collections.sort(scrapedCards);
+        /* Debug check for cards with the same number. The list is still sorted */
         for (int i = 0; i < scrapedCards.size() - 1; i++)
         {
             if (scrapedCards.get(i).mNumber.equals(scrapedCards.get(i + 1).mNumber))
@@ -307,40 +432,114 @@ public class GathererScraper {
             }
         }
 
-        Gson gson = new Gson();
-        for (CardGS c : scrapedCards) {
-            messageDigest.update(gson.toJson(c).getBytes());
-        }
-        exp.mDigest = null;
-        messageDigest.update(gson.toJson(exp).getBytes());
+        return scrapedCards;
+    }
+
+    /**
+     * Renumbers cards which share both a collector's number and a name. The
+     * list must already be sorted. It is walked once, in order, comparing each
+     * card to the last one which kept its number. Duplicates are moved by
+     * offsetNumber(), and a moved card goes to the front of the cards which
+     * already sort at its new number. That is where re-sorting the whole list
+     * after every change used to put it, so the numbering comes out the same.
+     *
+     * @param sortedCards The scraped cards, sorted
+     * @return The same cards, renumbered and still sorted
+     */
+    private static ArrayList<CardGS> renumberDuplicates(ArrayList<CardGS> sortedCards) {
+        ArrayList<CardGS> renumbered = new ArrayList<>(sortedCards.size());
+
+        /* Cards which were given a new number, grouped by where they sort now */
+        TreeMap<CardGS, ArrayDeque<CardGS>> movedCards = new TreeMap<>();
+
+        ArrayDeque<CardGS> group = new ArrayDeque<>();
+        CardGS kept = null;
+        int next = 0;
+        while (next < sortedCards.size() || !movedCards.isEmpty()) {
+            /* Gather the next group of cards which sort the same, moved cards first */
+            CardGS head;
+            if (!movedCards.isEmpty() && (next == sortedCards.size() ||
+                    movedCards.firstKey().compareTo(sortedCards.get(next)) <= 0)) {
+                Map.Entry<CardGS, ArrayDeque<CardGS>> moved = movedCards.pollFirstEntry();
+                head = moved.getKey();
+                group.addAll(moved.getValue());
+            } else {
+                head = sortedCards.get(next);
+            }
+            while (next < sortedCards.size() && sortedCards.get(next).compareTo(head) == 0) {
+                group.add(sortedCards.get(next++));
+            }
 
-        byte byteDigest[] = messageDigest.digest();
-        StringBuilder sb = new StringBuilder();
-        for (byte b : byteDigest) {
-            sb.append(String.format("%02x", b));
+            /* The first card keeps its number, the ones after it with the same number and name move */
+            CardGS card;
+            while (null != (card = group.poll())) {
+                if (null != kept && card.mNumber.equals(kept.mNumber) && card.mName.equals(kept.mName) &&
+                        offsetNumber(card)) {
+                    movedCards.computeIfAbsent(card, k -> new ArrayDeque<>()).addFirst(card);
+                } else {
+                    renumbered.add(card);
+                    kept = card;
+                }
+            }
         }
-        exp.mDigest = sb.toString();
+        return renumbered;
+    }
 
-        return scrapedCards;
+    /**
+     * Gives a card with a duplicated collector's number a new one, if its
+     * expansion is in DUPLICATE_NUMBER_OFFSETS. Numeric numbers are moved up by
+     * the offset, numbers with a letter get the next letter instead
+     *
+     * @param card The card to renumber
+     * @return true if the number was changed, false otherwise
+     */
+    private static boolean offsetNumber(CardGS card) {
+        Integer offset = DUPLICATE_NUMBER_OFFSETS.get(card.mExpansion);
+        if (null == offset) {
+            /* Do nothing. Allow other cards to have the same number */
+            return false;
+        }
+        try {
+            try {
+                card.mNumber = (Integer.parseInt(card.mNumber) + offset) + "";
+            } catch (NumberFormatException e) {
+                /* Guess it has a letter in there, increment that instead */
+                char letter = card.mNumber.charAt(card.mNumber.length() - 1);
+                card.mNumber = card.mNumber.substring(0, card.mNumber.length() - 1) + (char) (letter + 1);
+            }
+            return true;
+        } catch (Exception e) {
+            System.err.println(String.format("Muy Problemo [%3s] %s: %s",
+                    card.mExpansion,
+                    card.mName,
+                    e.toString()));
+            return false;
+        }
     }
 
     /**
-     * TODO document
+     * Calculates the color identity for every card. Each face's own identity is
+     * found first, then combined with its other half, which is looked up by
+     * collector's number. If multiple cards share a number, the first one wins
      *
-     * @param tmpScrapedCards
+     * @param tmpScrapedCards All the cards in the expansion
      */
     private static void calculateColorIdentities(ArrayList<CardGS> tmpScrapedCards) {
+        HashMap<String, CardGS> facesByNumber = new HashMap<>(tmpScrapedCards.size() * 2);
+        for (CardGS card : tmpScrapedCards) {
+            card.calculateFaceColorIdentity();
+            facesByNumber.putIfAbsent(card.mNumber, card);
+        }
         for (CardGS card : tmpScrapedCards) {
-            card.calculateColorIdentity(tmpScrapedCards);
+            card.calculateColorIdentity(facesByNumber);
         }
     }
 
+    /**
+     * @return The Gson used for all JSON files. It's built once and shared, Gson is thread-safe
+     */
     public static Gson getGson() {
-        GsonBuilder reader = new GsonBuilder();
-        reader.setFieldNamingStrategy((new PrefixedFieldNamingStrategy("m")));
-        reader.disableHtmlEscaping();
-        reader.setPrettyPrinting();
-        return reader.create();
+        return GSON;
     }
 
     /**
@@ -353,20 +552,33 @@ public class GathererScraper {
         int retries = 0;
         while (retries < Integer.MAX_VALUE - 1) {
             try {
-                // Note to self. If this stops working, wireshark a regular request from chrome and copy the cookie (and other fields)
-                return Jsoup
-                        .connect(urlStr)
-                        .userAgent("Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/61.0.3163.100 Safari/537.36")
-                        .header("Accept-Encoding", "gzip, deflate")
-                        .header("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,image/webp,image/apng,*/*;q=0.8")
-                        .header("Pragma", "no-cache")
-                        .header("Cache-Control", "no-cache")
-                        .header("Upgrade-Insecure-Requests", "1")
-                        .header("DNT", "1")
-                        .header("Accept-Language", "en-US,en;q=0.8")
-                        .header("Cookie", "f5_cspm=1234; f5_cspm=1234; BIGipServerWWWNetPool02=4111468810.20480.0000; CardDatabaseSettings=1=en-US; _ga=GA1.2.1294897467.1509075187; _gid=GA1.2.838335687.1510109719; ASP.NET_SessionId=; __utmt=1; __utma=28542179.1294897467.1509075187.1510152850.1510184901.4; __utmb=28542179.1.10.1510184901; __utmc=28542179; __utmz=28542179.1510109911.1.1.utmcsr=(direct)|utmccn=(direct)|utmcmd=(none); f5avr1559183795aaaaaaaaaaaaaaaa=CHILKMHBENHPFFICIBHJKDGFPJAMDMHJJPPNJCEEANLNJMLMJNBKKFELMNEKNKFDHDICANOFDFDHNLJHINLABDKABADNIKGENJNFPFEMGGJPCENBGKLPAFOIBCDONJFM")
-                        .timeout(0)
-                        .get();
+                return getConnection(urlStr).get();
+            } catch (Exception e) {
+                retries++;
+                try {
+                    Thread.sleep(1000 * retries);
+                } catch (InterruptedException e1) {
+                    e1.printStackTrace();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Like ConnectWithRetries(), but the page is only downloaded, not parsed
+     *
+     * @param urlStr The URL to download
+     * @return The response, with the whole body read, or null
+     */
+    static Connection.Response FetchWithRetries(String urlStr) {
+        int retries = 0;
+        while (retries < Integer.MAX_VALUE - 1) {
+            try {
+                Connection.Response response = getConnection(urlStr).execute();
+                /* Read the body now, so a broken connection is retried */
+                response.bodyAsBytes();
+                return response;
             } catch (Exception e) {
                 retries++;
                 try {
@@ -379,42 +591,71 @@ public class GathererScraper {
         return null;
     }
 
+    /**
+     * @param urlStr The URL to connect to
+     * @return A connection to the URL with all the headers Gatherer wants
+     */
+    private static Connection getConnection(String urlStr) {
+        // Note to self. If this stops working, wireshark a regular request from chrome and copy the cookie (and other fields)
+        return Jsoup
+                .connect(urlStr)
+                .userAgent("Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/61.0.3163.100 Safari/537.36")
+                .header("Accept-Encoding", "gzip, deflate")
+                .header("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,image/webp,image/apng,*/*;q=0.8")
+                .header("Pragma", "no-cache")
+                .header("Cache-Control", "no-cache")
+                .header("Upgrade-Insecure-Requests", "1")
+                .header("DNT", "1")
+                .header("Accept-Language", "en-US,en;q=0.8")
+                .header("Cookie", "f5_cspm=1234; f5_cspm=1234; BIGipServerWWWNetPool02=4111468810.20480.0000; CardDatabaseSettings=1=en-US; _ga=GA1.2.1294897467.1509075187; _gid=GA1.2.838335687.1510109719; ASP.NET_SessionId=; __utmt=1; __utma=28542179.1294897467.1509075187.1510152850.1510184901.4; __utmb=28542179.1.10.1510184901; __utmc=28542179; __utmz=28542179.1510109911.1.1.utmcsr=(direct)|utmccn=(direct)|utmcmd=(none); f5avr1559183795aaaaaaaaaaaaaaaa=CHILKMHBENHPFFICIBHJKDGFPJAMDMHJJPPNJCEEANLNJMLMJNBKKFELMNEKNKFDHDICANOFDFDHNLJHINLABDKABADNIKGENJNFPFEMGGJPCENBGKLPAFOIBCDONJFM")
+                .timeout(0);
+    }
+
     /**
      * Scrape all cards off a given page
      *
      * @param cardUrl                 The page to scrape
      * @param exp                     The expansion of the cards on this page
      * @param multiverseMap           A map of card names to multiverse IDs
-     * @param cachedCollectorsNumbers A map of card names + multiverseID to collector's numbers
+     * @param cachedCollectorsNumbers The collector's numbers from the old patch, by multiverse ID and name
+     * @param pageCache               What was parsed from each page last time, or null to parse every page
+     * @param writeBehind             Where to send expansion symbols to be written
      * @return An array list of scraped cards
      * @throws IOException Thrown if the Internet breaks
      */
     static ArrayList<CardGS> scrapePage(String cardUrl, ExpansionGS exp,
                                                 HashMap<String, Integer> multiverseMap,
-                                                HashMap<String, String> cachedCollectorsNumbers) {
+                                                CollectorNumberIndex cachedCollectorsNumbers,
+                                                PageCache pageCache,
+                                                WriteBehind writeBehind) {
         /* Keep track of a letter for multiple printings with the same name */
     	char ustLetter = 'a';
 
+        /* Unstable's numbers are lettered across all of a card's pages, so its pages are always parsed */
+        if ("UST".equals(exp.mCode_gatherer)) {
+            pageCache = null;
+        }
+
         /* Put all cards from all pages into this ArrayList */
         ArrayList<CardGS> scrapedCardsAllPages = new ArrayList<>();
 
         /* Download this page, add it to the collection */
-        ArrayList<Document> cardPages = new ArrayList<>();
-        cardPages.add(ConnectWithRetries(cardUrl));
-
-        /* Get all cards on this page */
-        HashMap<String, String> idsOnPage = getCardIds(cardPages.get(0), "[" + exp.mCode_gatherer + "] ");
-        int numNames = idsOnPage.keySet().size();
+        ArrayList<CardPage> cardPages = new ArrayList<>();
+        cardPages.add(fetchCardPage(cardUrl, pageCache));
+
+        int numNames;
+        TreeSet<Integer> mIds;
+        if (null != cardPages.get(0).mCached) {
+            /* The page didn't change, so neither did the printings on it */
+            numNames = cardPages.get(0).mCached.mNumNames;
+            mIds = new TreeSet<>(cardPages.get(0).mCached.mPrintings);
+        } else {
+            /* Get all cards on this page */
+            HashMap<String, String> idsOnPage = getCardIds(cardPages.get(0).getDocument(), "[" + exp.mCode_gatherer + "] ");
+            numNames = idsOnPage.keySet().size();
 
-        /* Get all the multiverse IDs of all printings */
-        ArrayList<Integer> mIds = new ArrayList<Integer>();
-        for(String idKey : idsOnPage.keySet())
-        {
-            ArrayList<Integer> ids = getPrintingMultiverseIds(cardPages.get(0), idsOnPage.get(idKey));
-            if(null != ids)
-            {
-                mIds.addAll(ids);
-            }
+            /* Get all the multiverse IDs of all printings, sorted and without duplicates */
+            mIds = getAllPrintingMultiverseIds(cardPages.get(0).getDocument(), idsOnPage);
         }
 
         if(!(("IN".equals(exp.mCode_gatherer) || "AP".equals(exp.mCode_gatherer)) &&
@@ -422,20 +663,33 @@ public class GathererScraper {
             /* If there are alternate printings */
             if (mIds != null) {
                 /* For all printings */
-            	Collections.sort(mIds);
                 for (Integer mId : mIds) {
                     /* If we haven't downloaded this page yet */
                     String newUrl = CardGS.getUrl(mId);
                     if (!newUrl.equals(cardUrl)) {
                         /* Download it */
-                        cardPages.add(ConnectWithRetries(CardGS.getUrl(mId)));
+                        cardPages.add(fetchCardPage(newUrl, pageCache));
                     }
                 }
             }
         }
 
-        for (Document cardPage : cardPages) {
+        for (CardPage page : cardPages) {
+
+            /* If the page didn't change, reuse what was parsed from it last time */
+            if (null != page.mCached && addExpansionSymbolUrls(exp, page.mCached.mCards)) {
+                for (CardGS card : page.mCached.getCards()) {
+                    /* Foreign printings are on other pages, which may have changed */
+                    card.mForeignPrintings = new ForeignPrintingList();
+                    scrapeLanguage(card.mMultiverseId, card.mForeignPrintings, "[" + exp.mCode_gatherer + "] " + card.mName);
+                    card.clearNulls();
+                    card.compact(STRING_POOL);
+                    scrapedCardsAllPages.add(card);
+                }
+                continue;
+            }
 
+            Document cardPage = page.getDocument();
             int mId = Integer.parseInt(cardPage.baseUri().substring(cardPage.baseUri().lastIndexOf("=") + 1));
 
             /* Put all cards from this page into this ArrayList */
@@ -636,9 +890,9 @@ public class GathererScraper {
                 /* Number */
                 /* Try pulling the card number out of the cache first */
                 if (cachedCollectorsNumbers != null) {
-                    card.mNumber = cachedCollectorsNumbers.get(card.mMultiverseId + card.mName);
+                    card.mNumber = cachedCollectorsNumbers.get(card.mMultiverseId, card.mName);
                     if (card.mNumber == null) {
-                        card.mNumber = cachedCollectorsNumbers.get(card.mMultiverseId + card.mName.replace("Ae", "Æ").replace("ae", "æ"));
+                        card.mNumber = cachedCollectorsNumbers.get(card.mMultiverseId, card.mName.replace("Ae", "Æ").replace("ae", "æ"));
                     }
                 }
 
@@ -731,69 +985,41 @@ public class GathererScraper {
 
                 /* color, calculated */
                 String color = getTextFromAttribute(cardPage, id + "colorIndicatorRow", "value", true, errLabel);
-                StringBuilder colorBuilder = new StringBuilder();
+                int colorMask = 0;
                 if (card.mType.contains("Artifact")) {
-                    colorBuilder.append("A");
+                    colorMask |= ColorMask.ARTIFACT;
                 }
                 if (card.mType.contains("Land")) {
-                    colorBuilder.append("L");
+                    colorMask |= ColorMask.LAND;
                 }
                 if (color != null) {
-                    if (color.contains("White")) {
-                        colorBuilder.append("W");
-                    }
-                    if (color.contains("Blue")) {
-                        colorBuilder.append("U");
-                    }
-                    if (color.contains("Black")) {
-                        colorBuilder.append("B");
-                    }
-                    if (color.contains("Red")) {
-                        colorBuilder.append("R");
-                    }
-                    if (color.contains("Green")) {
-                        colorBuilder.append("G");
-                    }
-                } else if (card.mManaCost != null) {
-                    if (card.mManaCost.contains("W")) {
-                        colorBuilder.append("W");
-                    }
-                    if (card.mManaCost.contains("U")) {
-                        colorBuilder.append("U");
-                    }
-                    if (card.mManaCost.contains("B")) {
-                        colorBuilder.append("B");
-                    }
-                    if (card.mManaCost.contains("R")) {
-                        colorBuilder.append("R");
-                    }
-                    if (card.mManaCost.contains("G")) {
-                        colorBuilder.append("G");
-                    }
+                    colorMask |= ColorMask.fromColorNames(color);
+                } else {
+                    colorMask |= ColorMask.fromLetters(card.mManaCost, ColorMask.WUBRG);
                 }
-                card.mColor = colorBuilder.toString();
 
                 /* If the card has no color, or it's Ghostfire, or it has Devoid */
-                if (card.mColor.isEmpty() || card.mName.equals("Ghostfire") ||
+                if (0 == colorMask || card.mName.equals("Ghostfire") ||
                         (card.mText != null && card.mText.contains("(This card has no color.)"))) {
-                    card.mColor = "C";
+                    colorMask = ColorMask.COLORLESS;
                 }
+                card.mColor = ColorMask.toColorString(colorMask);
 
                 //Scrape foreign language page, scrapping the name and the multiverse id of the card in foreign languages.
                 scrapeLanguage(card.mMultiverseId, card.mForeignPrintings, errLabel);
-                Collections.sort(card.mForeignPrintings);
 
                 card.clearNulls();
+                card.compact(STRING_POOL);
                 scrapedCards.add(card);
 
 				/* Download the expansion symbol, maybe */
 				try {
 					// Build the saved image name
-					File expansionSymbolFile = new File(SYMBOL_DIR, exp.mCode_gatherer + "_" + card.mRarity + ".png");
-					String expansionSymbolURL = "https://raw.githubusercontent.com/AEFeinstein/GathererScraper/" + getGitBranch() + "/symbols/" + expansionSymbolFile.getName();
+					File expansionSymbolFile = getExpansionSymbolFile(exp, card.mRarity);
+					String expansionSymbolURL = getExpansionSymbolUrl(expansionSymbolFile);
 
-					// If the saved image doesn't exist yet, save it
-					if (!expansionSymbolFile.exists()) {
+					// If the saved image doesn't exist yet, and isn't about to, save it
+					if (!expansionSymbolFile.exists() && !writeBehind.isPending(expansionSymbolFile)) {
 						// Get the element with this card's expansion symbol
 						Element ele = cardPage.getElementsByAttributeValueContaining("id", id + "currentSetSymbol").first()
 								.getElementsByAttribute("src").first();
@@ -845,15 +1071,8 @@ public class GathererScraper {
 				            			(int)Math.round(scale * expansionSymbol.getHeight()));
 				            }
 
-				            // Write the edited image
-				            FileOutputStream fos = new FileOutputStream(expansionSymbolFile);
-				            ImageIO.write(expansionSymbol, "png", fos);
-				            fos.close();
-
-				            // If nothing was actually written, delete the file
-							if(0 == expansionSymbolFile.length()) {
-								expansionSymbolFile.delete();
-							}
+				            // Write the edited image on a writer thread
+				            writeBehind.writeSymbol(expansionSymbol, expansionSymbolFile);
 						}
 					}
 					if(!exp.mExpansionImageURLs.contains(expansionSymbolURL)) {
@@ -861,6 +1080,8 @@ public class GathererScraper {
 					}
 				} catch (IOException e1) {
 					e1.printStackTrace();
+				} catch (InterruptedException e1) {
+					Thread.currentThread().interrupt();
 				}
             }
 
@@ -907,12 +1128,129 @@ public class GathererScraper {
                 }
             }
 
+            /* Remember what was parsed, in case the page is the same next time */
+            if (null != page.mHash) {
+                pageCache.put(page.mMultiverseId, page.mHash, ids.keySet().size(),
+                        getAllPrintingMultiverseIds(cardPage, ids), scrapedCards);
+            }
 
             scrapedCardsAllPages.addAll(scrapedCards);
         }
         return scrapedCardsAllPages;
     }
 
+    /**
+     * A downloaded card page. It's only parsed if it isn't in the page cache
+     */
+    private static class CardPage {
+        final int mMultiverseId;
+        /* The hash of the page's HTML, or null if the page cache isn't used */
+        final String mHash;
+        /* What was parsed from the page last time, or null if it has to be parsed */
+        final PageCache.Entry mCached;
+        private Connection.Response mResponse;
+        private Document mDocument;
+
+        CardPage(int multiverseId, String hash, PageCache.Entry cached, Connection.Response response, Document document) {
+            mMultiverseId = multiverseId;
+            mHash = hash;
+            mCached = cached;
+            mResponse = response;
+            mDocument = document;
+        }
+
+        /**
+         * @return The parsed page. It's parsed the first time this is called
+         */
+        Document getDocument() {
+            if (null == mDocument) {
+                try {
+                    mDocument = mResponse.parse();
+                } catch (IOException e) {
+                    /* Shouldn't happen, the body was already read. Download it again */
+                    mDocument = ConnectWithRetries(CardGS.getUrl(mMultiverseId));
+                }
+                mResponse = null;
+            }
+            return mDocument;
+        }
+    }
+
+    /**
+     * Download a card page, and look it up in the page cache
+     *
+     * @param cardUrl   The page to download
+     * @param pageCache The page cache, or null to parse the page right away
+     * @return The downloaded page
+     */
+    private static CardPage fetchCardPage(String cardUrl, PageCache pageCache) {
+        int multiverseId = Integer.parseInt(cardUrl.substring(cardUrl.lastIndexOf("=") + 1));
+        if (null == pageCache) {
+            return new CardPage(multiverseId, null, null, null, ConnectWithRetries(cardUrl));
+        }
+        Connection.Response response = FetchWithRetries(cardUrl);
+        String hash = PageCache.hash(response.bodyAsBytes());
+        return new CardPage(multiverseId, hash, pageCache.get(multiverseId, hash), response, null);
+    }
+
+    /**
+     * @param cardPage The card page
+     * @param ids      The IDs of the cards on the page, from getCardIds()
+     * @return The multiverse IDs of all printings of all cards on the page, sorted and without duplicates
+     */
+    private static TreeSet<Integer> getAllPrintingMultiverseIds(Document cardPage, HashMap<String, String> ids) {
+        TreeSet<Integer> mIds = new TreeSet<>();
+        for (String idKey : ids.keySet()) {
+            ArrayList<Integer> printingIds = getPrintingMultiverseIds(cardPage, ids.get(idKey));
+            if (null != printingIds) {
+                mIds.addAll(printingIds);
+            }
+        }
+        return mIds;
+    }
+
+    /**
+     * Add the expansion symbol URLs for cards which weren't parsed from their
+     * card page, like cards from the page cache, to the expansion. The symbols
+     * are downloaded from the card page, so if any are missing, nothing is
+     * added and the page has to be parsed after all
+     *
+     * @param exp   The expansion of the cards
+     * @param cards The cards which weren't parsed
+     * @return true if all the expansion symbols were already saved, false otherwise
+     */
+    private static boolean addExpansionSymbolUrls(ExpansionGS exp, ArrayList<? extends Card> cards) {
+        for (Card card : cards) {
+            if (!getExpansionSymbolFile(exp, card.mRarity).exists()) {
+                return false;
+            }
+        }
+        for (Card card : cards) {
+            String expansionSymbolURL = getExpansionSymbolUrl(getExpansionSymbolFile(exp, card.mRarity));
+            if (!exp.mExpansionImageURLs.contains(expansionSymbolURL)) {
+                exp.mExpansionImageURLs.add(expansionSymbolURL);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param exp    The expansion
+     * @param rarity The rarity of the symbol
+     * @return Where the expansion symbol is saved
+     */
+    private static File getExpansionSymbolFile(ExpansionGS exp, char rarity) {
+        return new File(SYMBOL_DIR, exp.mCode_gatherer + "_" + rarity + ".png");
+    }
+
+    /**
+     * @param expansionSymbolFile Where the expansion symbol is saved
+     * @return Where the app downloads the expansion symbol from
+     */
+    private static String getExpansionSymbolUrl(File expansionSymbolFile) {
+        return "https://raw.githubusercontent.com/AEFeinstein/GathererScraper/" + getGitBranch() + "/symbols/" + expansionSymbolFile.getName();
+    }
+
 	/**
      * Given a string power, toughness, or loyalty, convert it into a float
      *
@@ -962,12 +1300,11 @@ public class GathererScraper {
      * Scrape the Language Gatherer page of the card with the english multiverse id given in the params.
      *
      * @param englishMultiverseId  The english multiverse ID of the card for which we will scrape the foreign language infos.
-     * @param foreignNames         A HashMap where will be added the foreign names of the card, indexed by their language code.
-     * @param foreignMultiverseIds A HashMap where will be added the foreign multiverse ID of the card, indexed by their language code.
+     * @param foreignPrintings     A list where the foreign printings of the card will be added, in sorted order.
      * @param errLabel a label to print in case of error
      */
     private static void scrapeLanguage(
-            int englishMultiverseId, ArrayList<Card.ForeignPrinting> foreignPrintings, String errLabel) {
+            int englishMultiverseId, ForeignPrintingList foreignPrintings, String errLabel) {
         if (englishMultiverseId == 0 || foreignPrintings == null) {
             return;
         }
@@ -976,7 +1313,7 @@ public class GathererScraper {
         int pageNum = 0;
         boolean foreignPrintingAdded = true;
         boolean hasMultiplePages = true;
-        ArrayList<Integer> multiverseIDs = new ArrayList<>();
+        HashSet<Integer> multiverseIDs = new HashSet<>();
 
         while (foreignPrintingAdded && hasMultiplePages) {
             Document page = ConnectWithRetries(CardGS.getLanguageUrl(englishMultiverseId, pageNum));
@@ -995,120 +1332,28 @@ public class GathererScraper {
 
             	/* First check the multiverse ID to see if the page is a duplicate */
                 int mMultiverseId = Integer.parseInt(elt.child(0).child(0).attr("href").split("=")[1]);
-                if(multiverseIDs.contains(mMultiverseId)) {
+                if(!multiverseIDs.add(mMultiverseId)) {
                 	/* Duplicate, which means WotC served the same page twice and we're done */
                     foreignPrintingAdded = false;
                     break;
-                } else {
-                	/* Note this ID */
-                	multiverseIDs.add(mMultiverseId);
                 }
 
-                ForeignPrinting fp = (new Card()).new ForeignPrinting();
-                fp.mName = elt.child(0).text();
-                String language = elt.child(1).html();
-                switch (language) {
-                    case "English":
-                        fp.mLanguageCode = Language.English;
-                        break;
-                    case "German":
-                        fp.mLanguageCode = Language.German;
-                        break;
-                    case "French":
-                        fp.mLanguageCode = Language.French;
-                        break;
-                    case "Japanese":
-                        fp.mLanguageCode = Language.Japanese;
-                        break;
-                    case "Portuguese (Brazil)":
-                        fp.mLanguageCode = Language.Portuguese_Brazil;
-                        break;
-                    case "Russian":
-                        fp.mLanguageCode = Language.Russian;
-                        break;
-                    case "Chinese Traditional":
-                        fp.mLanguageCode = Language.Chinese_Traditional;
-                        break;
-                    case "Chinese Simplified":
-                        fp.mLanguageCode = Language.Chinese_Simplified;
-                        break;
-                    case "Korean":
-                        fp.mLanguageCode = Language.Korean;
-                        break;
-                    case "Italian":
-                        fp.mLanguageCode = Language.Italian;
-                        break;
-                    case "Spanish":
-                        fp.mLanguageCode = Language.Spanish;
-                        break;
-                    default:
-                        System.err.println(errLabel + " Unknown language: " + language);
-                        continue;
+                String name = elt.child(0).text();
+                String label = elt.child(1).html();
+                Language language = Language.fromGathererLabel(label);
+                if (null == language) {
+                    System.err.println(errLabel + " Unknown language: " + label);
+                    continue;
                 }
 
-                if (!foreignPrintings.contains(fp)) {
-                    foreignPrintings.add(fp);
-                }
+                /* Duplicates are ignored by the list */
+                foreignPrintings.add(new ForeignPrinting(language, name));
             }
             pageNum++;
         }
     }
 
 
-    /**
-     * Add links to the text to handle meld cards
-     *
-     * @param mText The card text without links
-     * @param scrapedCards
-     * @param code_gatherer
-     * @return The card text with links
-     */
-    private static String linkifyText(String mText, String code_gatherer, ArrayList<CardGS> scrapedCards) {
-        if (mText == null) {
-            return null;
-        }
-        mText = mText.replace("Bruna, the Fading Light", uriLink("Bruna, the Fading Light", 414304));
-        mText = mText.replace("Gisela, the Broken Blade", uriLink("Gisela, the Broken Blade", 414319));
-        mText = mText.replace("Brisela, Voice of Nightmares", uriLink("Brisela, Voice of Nightmares", 414305));
-
-        mText = mText.replace("Graf Rats", uriLink("Graf Rats", 414386));
-        mText = mText.replace("Midnight Scavengers", uriLink("Midnight Scavengers", 414391));
-        mText = mText.replace("Chittering Host", uriLink("Chittering Host", 414392));
-
-        mText = mText.replace("Hanweir Battlements", uriLink("Hanweir Battlements", 414511));
-        mText = mText.replace("Hanweir Garrison", uriLink("Hanweir Garrison", 414428));
-        mText = mText.replace("Hanweir, the Writhing Township", uriLink("Hanweir, the Writhing Township", 414429));
-
-        mText = mText.replace("AskUrza.com", "<a href=\"http://www.AskUrza.com\">AskUrza.com</a>");
-
-        // Try to linkify Battlebond cards
-        if(code_gatherer.equals("BBD")) {
-        	// Use a regex to find the Partner name
-            Matcher matcher = BATTLEBOND_PATTERN.matcher(mText);
-            if (matcher.find()) {
-            	String otherName = matcher.group(1).trim();
-            	int otherMultiverseId = -1;
-            	// Look through the cards scraped on this page to find the other card's multiverse ID
-            	for(CardGS card : scrapedCards) {
-            		if(card.mName.equals(otherName)) {
-            			otherMultiverseId = card.mMultiverseId;
-            			break;
-            		}
-            	}
-            	// If the multiverse ID was found, linkify!
-            	if(otherMultiverseId > 0) {
-            		 mText = mText.replaceFirst(otherName, uriLink(otherName, otherMultiverseId));
-            	}
-            }
-        }
-
-        return mText;
-    }
-
-    private static String uriLink(String string, int i) {
-        return "<a href=\"card://multiverseid/internal/" + i + "\">" + string + "</a>";
-    }
-
     /**
      * Get all IDs for all cards on a given page. This usually returns one ID
      * in the HashMap, but will return two for split, double faced, or flip cards
@@ -1401,32 +1646,73 @@ public class GathererScraper {
     }
 
     /**
-     * Write the json object to a json file, UTF-8, Unix line endings
+     * Write the json object to a json file, UTF-8, Unix line endings. The JSON
+     * is streamed token by token through a buffer into the file, or into the
+     * deflater if it's zipped, so the whole document is never held in memory.
+     * Gson's pretty printing always writes '\n', so this doesn't depend on any
+     * system property and is safe to call from multiple threads
      *
-     * @param json    The JSON object to write
-     * @param outFile The file to write to
+     * @param object    The JSON object to write, or a String to write as-is
+     * @param outFile   The file to write to
+     * @param shouldZip true to gzip the file, false to write plain text
      * @throws IOException Thrown if the write fails
      */
     static void writeFile(Object object, File outFile, boolean shouldZip) throws IOException {
-        System.setProperty("line.separator", "\r\n");
-        OutputStream fos;
-
+        OutputStream fos = new FileOutputStream(outFile);
         if (shouldZip) {
-            fos = new GZIPOutputStream(new FileOutputStream(outFile));
-        } else {
-            fos = new FileOutputStream(outFile);
+            fos = new ParallelGzipOutputStream(new BufferedOutputStream(fos, WRITE_BUFFER_SIZE));
         }
 
-        OutputStreamWriter osw = new OutputStreamWriter(fos, Charset.forName("UTF-8"));
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(fos, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE)) {
+            if (object instanceof String) {
+                writer.write((String) object);
+            } else {
+                JsonWriter jsonWriter = GSON.newJsonWriter(writer);
+                GSON.toJson(object, object.getClass(), jsonWriter);
+                jsonWriter.flush();
+            }
+        }
+    }
 
-        if (object instanceof String) {
-            osw.write(((String) object));
-        } else {
-            osw.write(GathererScraper.getGson().toJson(object));
+    /**
+     * Move a finished temporary file over the file it replaces, atomically if
+     * the file system allows it, so readers see either the old or the new file
+     *
+     * @param tmpFile    The finished file, in the same directory as target
+     * @param targetFile The file to replace
+     * @throws IOException Thrown if the file can't be moved
+     */
+    static void replaceAtomically(File tmpFile, File targetFile) throws IOException {
+        try {
+            Files.move(tmpFile.toPath(), targetFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpFile.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
         }
+    }
 
-        osw.flush();
-        osw.close();
+    /**
+     * @return A new MD5 digest, for patch digests and anything else which is checked against them
+     */
+    static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            /* Every JVM has to have MD5, so this can't happen */
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param bytes Some bytes, like a digest
+     * @return The bytes in lower case hex
+     */
+    static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = Character.forDigit((bytes[i] >> 4) & 0xF, 16);
+            hex[2 * i + 1] = Character.forDigit(bytes[i] & 0xF, 16);
+        }
+        return new String(hex);
     }
 
     public static String getGitBranch() {
@@ -13,12 +13,14 @@ import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.awt.event.ActionListener;
 import java.awt.event.ActionEvent;
 
@@ -30,13 +32,21 @@ import java.awt.event.ActionEvent;
 public class GathererScraperUi {
 
     static final String PATCH_FILE_NAME = "patches.json";
+    static final String DICTIONARY_PATCH_FILE_NAME = "patches-dictionary.json";
+    static final String DELTA_PATCH_FILE_NAME = "patches-delta.json";
     private static final String EXPANSION_FILE_NAME = "expansions.json";
     public static final String LEGAL_FILE_NAME = "legality.json";
     private static final String APPMAP_FILE_NAME = "appmap-com.gelakinetic.mtgfam.xml";
+    private static final byte[] APPMAP_ID_PREFIX = "multiverseid/".getBytes(StandardCharsets.US_ASCII);
 
     private JProgressBar mExpansionProgressBar;
     private JLabel mLastCardScraped;
     private JTable mTable;
+    private JCheckBox mDictionaryPatches;
+    private JCheckBox mBinaryPatches;
+    private JCheckBox mIncrementalScrape;
+    private JCheckBox mCachePages;
+    private JCheckBox mResumeScrape;
 
     private ExpansionTableModel mExpansionTableModel;
     private LegalityListModel mLegalityListModel;
@@ -46,10 +56,11 @@ public class GathererScraperUi {
     private File mExpansionsFile = null;
     private File mAppmapFile = null;
 
-    private HashSet<Integer> mAllMultiverseIds;
+    private MultiverseIdSet mAllMultiverseIds;
 
     private int mNumExpansions;
     private int mExpansionsProcessed;
+    private int mPatchesUnchanged;
 
     /**
      * Launch the application.
@@ -123,9 +134,9 @@ public class GathererScraperUi {
         frame.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
         GridBagLayout gridBagLayout = new GridBagLayout();
         gridBagLayout.columnWidths = new int[]{0, 0, 278, 80, 0};
-        gridBagLayout.rowHeights = new int[]{0, 0, 0, 0, 0, 0};
+        gridBagLayout.rowHeights = new int[]{0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0};
         gridBagLayout.columnWeights = new double[]{0.0, 0.0, 1.0, 0.0, Double.MIN_VALUE};
-        gridBagLayout.rowWeights = new double[]{0.0, 0.0, 0.0, 1.0, 0.0, Double.MIN_VALUE};
+        gridBagLayout.rowWeights = new double[]{0.0, 0.0, 0.0, 1.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, Double.MIN_VALUE};
         frame.getContentPane().setLayout(gridBagLayout);
 
         frame.addWindowListener(new java.awt.event.WindowAdapter() {
@@ -183,7 +194,7 @@ public class GathererScraperUi {
             if (mLegalityFile.exists()) {
                 mLegalityListModel.loadLegalities(mLegalityFile);
             }
-            mAllMultiverseIds = new HashSet<>();
+            mAllMultiverseIds = new MultiverseIdSet();
             if (mAppmapFile.exists()) {
                 loadMultiverseIds(mAppmapFile, mAllMultiverseIds);
             }
@@ -319,8 +330,43 @@ public class GathererScraperUi {
 //                ExecutorService threadPool = Executors.newFixedThreadPool(Runtime.getRuntime()
 //                        .availableProcessors());
                 ExecutorService threadPool = Executors.newFixedThreadPool(1);
+
+                /* Don't leave a crashed run's half written patches in the published directory */
+                PatchWriter.deleteStaleFiles(new File(mFilesPath, GathererScraper.PATCH_DIR));
+
+                /* Patches and symbols are compressed and written on their own threads */
+                int numWriters = Runtime.getRuntime().availableProcessors();
+                final WriteBehind writeBehind = new WriteBehind(numWriters, 2 * numWriters);
+
+                /* Patches can also be written with a preset dictionary, alongside the gzipped ones */
+                PatchDictionary loadedDictionary = null;
+                if (mDictionaryPatches.isSelected()) {
+                    try {
+                        loadedDictionary = PatchDictionary.loadOrTrain(new File(mFilesPath, GathererScraper.PATCH_DIR));
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+                final PatchDictionary dictionary = loadedDictionary;
+                final boolean writeBinary = mBinaryPatches.isSelected();
+                final boolean incremental = mIncrementalScrape.isSelected();
+
+                /* Card pages which haven't changed since last time don't have to be parsed again */
+                final File pageCacheFile = new File(mFilesPath, PageCache.CACHE_FILE_NAME);
+                final PageCache pageCache = mCachePages.isSelected() ? PageCache.load(pageCacheFile) : null;
+
+                /* Journal every card page and expansion, so a run which dies can be resumed */
+                final File journalFile = new File(mFilesPath, ScrapeJournal.JOURNAL_FILE_NAME);
+                ScrapeJournal openedJournal = null;
+                try {
+                    openedJournal = mResumeScrape.isSelected() ? ScrapeJournal.resume(journalFile) : ScrapeJournal.start(journalFile);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                final ScrapeJournal journal = openedJournal;
                 mNumExpansions = 0;
                 mExpansionsProcessed = 0;
+                mPatchesUnchanged = 0;
 
                 ArrayList<ExpansionGS> toScrape = new ArrayList<>();
                 for (ExpansionGS exp : mExpansionTableModel.mExpansions) {
@@ -363,6 +409,11 @@ public class GathererScraperUi {
 //				});
                 
                 for (final ExpansionGS exp : toScrape) {
+                    /* Expansions finished before resuming aren't scraped again */
+                    if (null != journal && journal.restoreFinishedExpansion(exp, mAllMultiverseIds)) {
+                        exp.mName_gatherer = GathererScraper.removeNonAscii(exp.mName_gatherer);
+                        continue;
+                    }
                     threadPool.submit(new Runnable() {
                         /**
                          * This will scrape all the cards in the
@@ -373,8 +424,8 @@ public class GathererScraperUi {
                         @Override
                         public void run() {
                             try {
-                                ArrayList<CardGS> cards = GathererScraper.scrapeExpansion(exp, GathererScraperUi.this, mAllMultiverseIds);
-                                writeJsonPatchFile(mExpansionTableModel.mExpansions, exp, cards);
+                                ArrayList<CardGS> cards = GathererScraper.scrapeExpansion(exp, GathererScraperUi.this, mAllMultiverseIds, writeBehind, incremental, pageCache, journal);
+                                writeJsonPatchFile(mExpansionTableModel.mExpansions, exp, cards, writeBehind, dictionary, writeBinary, journal);
                             } catch (Exception e) {
                                 e.printStackTrace();
                             }
@@ -394,16 +445,46 @@ public class GathererScraperUi {
                 try {
                     threadPool.shutdown();
                     threadPool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+                    /* Then wait for all the files to be written */
+                    writeBehind.finish();
                 } catch (InterruptedException e1) {
                     frame.setEnabled(true);
                     frame.setCursor(Cursor.getDefaultCursor());
                 }
 
+                if (null != journal) {
+                    try {
+                        journal.close();
+                        /* Nothing to resume once every expansion is done */
+                        if (journal.getExpansionsFinished() == mNumExpansions) {
+                            journalFile.delete();
+                        }
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+
+                if (null != pageCache) {
+                    try {
+                        pageCache.save(pageCacheFile);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                    System.out.println(pageCache.getStats());
+                }
+
                 try {
                     /* Write the patches manifest */
 
                     Collections.sort(mExpansionTableModel.mExpansions);
                     mExpansionTableModel.writePatchesManifestFile(new File(mFilesPath, PATCH_FILE_NAME));
+                    mExpansionTableModel.writeDeltaManifestFile(new File(mFilesPath, DELTA_PATCH_FILE_NAME),
+                            new File(mFilesPath, GathererScraper.PATCH_DIR));
+                    if (null != dictionary) {
+                        mExpansionTableModel.writeDictionaryManifestFile(new File(mFilesPath, DICTIONARY_PATCH_FILE_NAME),
+                                new File(mFilesPath, GathererScraper.PATCH_DIR), dictionary);
+                    }
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
@@ -412,26 +493,15 @@ public class GathererScraperUi {
                     if (mAppmapFile.exists()) {
                         mAppmapFile.delete();
                     }
-                    Integer multiverseIdsArray[] = new Integer[mAllMultiverseIds.size()];
-                    mAllMultiverseIds.toArray(multiverseIdsArray);
-                    Arrays.sort(multiverseIdsArray);
-
-                    StringBuilder appmapBuilder = new StringBuilder();
-                    appmapBuilder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
-                    appmapBuilder.append("<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n");
-                    for (int multiverseId : multiverseIdsArray) {
-                        appmapBuilder.append("<url><loc>android-app://com.gelakinetic.mtgfam/card/multiverseid/").append(multiverseId).append("</loc></url>\n");
-                    }
-                    appmapBuilder.append("</urlset>\n");
-
-                    GathererScraper.writeFile(appmapBuilder.toString(), new File(mFilesPath, APPMAP_FILE_NAME), false);
+                    writeAppmap(new File(mFilesPath, APPMAP_FILE_NAME), mAllMultiverseIds);
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
 
                 /* Just a little feedback on how long the operation took */
                 long time = System.currentTimeMillis() - startTime;
-                JOptionPane.showMessageDialog(frame, "Done in " + time + "ms", "Complete",
+                JOptionPane.showMessageDialog(frame, "Done in " + time + "ms, " + mPatchesUnchanged +
+                                " of " + mNumExpansions + " patches unchanged", "Complete",
                         JOptionPane.PLAIN_MESSAGE);
 
                 /* Reenable the cursor */
@@ -481,6 +551,98 @@ public class GathererScraperUi {
         gbc_chckbxSelectAll.gridx = 3;
         gbc_chckbxSelectAll.gridy = 4;
         frame.getContentPane().add(chckbxSelectAll, gbc_chckbxSelectAll);
+
+        mDictionaryPatches = new JCheckBox("Also write dictionary encoded patches");
+        GridBagConstraints gbc_chckbxDictionaryPatches = new GridBagConstraints();
+        gbc_chckbxDictionaryPatches.anchor = GridBagConstraints.WEST;
+        gbc_chckbxDictionaryPatches.gridwidth = 3;
+        gbc_chckbxDictionaryPatches.insets = new Insets(0, 0, 0, 5);
+        gbc_chckbxDictionaryPatches.gridx = 0;
+        gbc_chckbxDictionaryPatches.gridy = 5;
+        frame.getContentPane().add(mDictionaryPatches, gbc_chckbxDictionaryPatches);
+
+        mBinaryPatches = new JCheckBox("Also write binary patches");
+        GridBagConstraints gbc_chckbxBinaryPatches = new GridBagConstraints();
+        gbc_chckbxBinaryPatches.anchor = GridBagConstraints.WEST;
+        gbc_chckbxBinaryPatches.gridwidth = 3;
+        gbc_chckbxBinaryPatches.insets = new Insets(0, 0, 0, 5);
+        gbc_chckbxBinaryPatches.gridx = 0;
+        gbc_chckbxBinaryPatches.gridy = 6;
+        frame.getContentPane().add(mBinaryPatches, gbc_chckbxBinaryPatches);
+
+        mIncrementalScrape = new JCheckBox("Only scrape new and changed cards");
+        GridBagConstraints gbc_chckbxIncrementalScrape = new GridBagConstraints();
+        gbc_chckbxIncrementalScrape.anchor = GridBagConstraints.WEST;
+        gbc_chckbxIncrementalScrape.gridwidth = 3;
+        gbc_chckbxIncrementalScrape.insets = new Insets(0, 0, 0, 5);
+        gbc_chckbxIncrementalScrape.gridx = 0;
+        gbc_chckbxIncrementalScrape.gridy = 7;
+        frame.getContentPane().add(mIncrementalScrape, gbc_chckbxIncrementalScrape);
+
+        mCachePages = new JCheckBox("Don't parse unchanged card pages");
+        GridBagConstraints gbc_chckbxCachePages = new GridBagConstraints();
+        gbc_chckbxCachePages.anchor = GridBagConstraints.WEST;
+        gbc_chckbxCachePages.gridwidth = 3;
+        gbc_chckbxCachePages.insets = new Insets(0, 0, 0, 5);
+        gbc_chckbxCachePages.gridx = 0;
+        gbc_chckbxCachePages.gridy = 8;
+        frame.getContentPane().add(mCachePages, gbc_chckbxCachePages);
+
+        mResumeScrape = new JCheckBox("Resume the last run which didn't finish");
+        GridBagConstraints gbc_chckbxResumeScrape = new GridBagConstraints();
+        gbc_chckbxResumeScrape.anchor = GridBagConstraints.WEST;
+        gbc_chckbxResumeScrape.gridwidth = 3;
+        gbc_chckbxResumeScrape.insets = new Insets(0, 0, 0, 5);
+        gbc_chckbxResumeScrape.gridx = 0;
+        gbc_chckbxResumeScrape.gridy = 9;
+        frame.getContentPane().add(mResumeScrape, gbc_chckbxResumeScrape);
+
+        JButton btnExportSqlite = new JButton("Export SQLite");
+        btnExportSqlite.addActionListener(arg0 -> {
+            File scriptFile = new File(mFilesPath, SqliteExport.SCRIPT_FILE_NAME);
+            try {
+                int numCards = SqliteExport.exportPatches(new File(mFilesPath, GathererScraper.PATCH_DIR), scriptFile);
+                File databaseFile = new File(mFilesPath, SqliteExport.DATABASE_FILE_NAME);
+                if (SqliteExport.buildDatabase(scriptFile, databaseFile)) {
+                    JOptionPane.showMessageDialog(frame, "Exported " + numCards + " cards to " + databaseFile.getName(),
+                            "Complete", JOptionPane.PLAIN_MESSAGE);
+                } else {
+                    JOptionPane.showMessageDialog(frame, "Exported " + numCards + " cards\r\nsqlite3 isn't installed, build the database with:\r\nsqlite3 "
+                            + databaseFile.getName() + " < " + scriptFile.getName(), "Complete", JOptionPane.PLAIN_MESSAGE);
+                }
+            } catch (IOException e) {
+                StringWriter sw = new StringWriter();
+                PrintWriter pw = new PrintWriter(sw);
+                e.printStackTrace(pw);
+                JOptionPane.showMessageDialog(frame, sw.toString(), "ERROR",
+                        JOptionPane.ERROR_MESSAGE);
+            }
+        });
+        GridBagConstraints gbc_btnExportSqlite = new GridBagConstraints();
+        gbc_btnExportSqlite.fill = GridBagConstraints.HORIZONTAL;
+        gbc_btnExportSqlite.gridx = 3;
+        gbc_btnExportSqlite.gridy = 5;
+        frame.getContentPane().add(btnExportSqlite, gbc_btnExportSqlite);
+
+        JButton btnWriteBundle = new JButton("Write Bundle");
+        btnWriteBundle.addActionListener(arg0 -> {
+            try {
+                int reused = CatalogBundle.update(new File(mFilesPath), new File(mFilesPath, CatalogBundle.BUNDLE_FILE_NAME));
+                JOptionPane.showMessageDialog(frame, "Bundle written, " + reused + " entries reused", "Complete",
+                        JOptionPane.PLAIN_MESSAGE);
+            } catch (IOException e) {
+                StringWriter sw = new StringWriter();
+                PrintWriter pw = new PrintWriter(sw);
+                e.printStackTrace(pw);
+                JOptionPane.showMessageDialog(frame, sw.toString(), "ERROR",
+                        JOptionPane.ERROR_MESSAGE);
+            }
+        });
+        GridBagConstraints gbc_btnWriteBundle = new GridBagConstraints();
+        gbc_btnWriteBundle.fill = GridBagConstraints.HORIZONTAL;
+        gbc_btnWriteBundle.gridx = 3;
+        gbc_btnWriteBundle.gridy = 6;
+        frame.getContentPane().add(btnWriteBundle, gbc_btnWriteBundle);
         chckbxSelectAll.addActionListener(e -> {
             if (chckbxSelectAll.isSelected()) {
                 for (ExpansionGS exp : mExpansionTableModel.mExpansions) {
@@ -499,68 +661,172 @@ public class GathererScraperUi {
     }
 
     /**
-     * Reads in all the multiverse IDs from an appmap
+     * Writes all the multiverse IDs to an appmap, in ascending order. Each ID
+     * is written as it's read from the set, the document is never built in
+     * memory
+     *
+     * @param appmapFile       The file to write to
+     * @param allMultiverseIds The IDs to write
+     * @throws IOException If the file can't be written
+     */
+    private static void writeAppmap(File appmapFile, MultiverseIdSet allMultiverseIds) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(appmapFile), "UTF-8"))) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            writer.write("<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n");
+            for (int multiverseId = allMultiverseIds.nextId(0); multiverseId >= 0;
+                 multiverseId = allMultiverseIds.nextId(multiverseId + 1)) {
+                writer.write("<url><loc>android-app://com.gelakinetic.mtgfam/card/multiverseid/");
+                writer.write(Integer.toString(multiverseId));
+                writer.write("</loc></url>\n");
+            }
+            writer.write("</urlset>\n");
+        }
+    }
+
+    /**
+     * Reads in all the multiverse IDs from an appmap. The file is memory mapped
+     * and scanned byte by byte for "multiverseid/", and the digits after it are
+     * parsed straight into the set
      *
      * @param appmapFile       The file to read from
-     * @param allMultiverseIds A HashSet to store all the IDs
+     * @param allMultiverseIds A set to store all the IDs
      */
     private void loadMultiverseIds(File appmapFile,
-                                   HashSet<Integer> allMultiverseIds) {
-        try {
-            // String to be scanned to find the pattern.
-            String pattern = "multiverseid/([0-9]+)";
-
-            BufferedReader br = new BufferedReader(new FileReader(appmapFile));
-            String line;
-            while ((line = br.readLine()) != null) {
-
-                // Create a Pattern object
-                Pattern r = Pattern.compile(pattern);
-
-                // Now create matcher object.
-                Matcher m = r.matcher(line);
-                if (m.find()) {
-                    int mId = Integer.parseInt(m.group().split("/")[1]);
-                    allMultiverseIds.add(mId);
+                                   MultiverseIdSet allMultiverseIds) {
+        try (FileChannel channel = FileChannel.open(appmapFile.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int limit = buffer.limit();
+            int matched = 0;
+            for (int i = 0; i < limit; i++) {
+                byte b = buffer.get(i);
+                if (b == APPMAP_ID_PREFIX[matched]) {
+                    matched++;
+                    if (matched == APPMAP_ID_PREFIX.length) {
+                        /* Found the prefix, parse the ID after it */
+                        int mId = 0;
+                        int digits = 0;
+                        while (i + 1 < limit && (b = buffer.get(i + 1)) >= '0' && b <= '9') {
+                            mId = (mId * 10) + (b - '0');
+                            digits++;
+                            i++;
+                        }
+                        if (digits > 0) {
+                            allMultiverseIds.add(mId);
+                        }
+                        matched = 0;
+                    }
+                } else {
+                    /* The prefix's first character doesn't appear again in it, so a match can only restart here */
+                    matched = (b == APPMAP_ID_PREFIX[0]) ? 1 : 0;
                 }
             }
-            br.close();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
     /**
-     * This function builds and writes a patch file which contains all the
-     * scraped information.
+     * This function builds a patch file which contains all the scraped
+     * information, and queues it to be written. The patch is serialized and
+     * compressed on a writer thread, which also sets the expansion's digest
+     * once the patch is written
      *
-     * @param exp      The expansion to make write this file for
-     * @param allCards The scraped cards in the expansion
-     * @return a JSONObject containing metadata about the patch. This is used to
-     * build a patch manifest
+     * @param exp         The expansion to make write this file for
+     * @param allCards    The scraped cards in the expansion
+     * @param writeBehind Where to send the patch to be written
+     * @param dictionary  A dictionary to also encode the patch with, or null to only gzip it
+     * @param writeBinary true to also write the patch in binary, see BinaryPatch
+     * @param journal     Where to record that the expansion is finished, or null
+     * @throws InterruptedException If interrupted while waiting for space in the write queue
      */
-    private void writeJsonPatchFile(ArrayList<ExpansionGS> expansions, Expansion exp, ArrayList<CardGS> allCards) {
-        
+    private void writeJsonPatchFile(ArrayList<ExpansionGS> expansions, final Expansion exp, ArrayList<CardGS> allCards,
+                                    WriteBehind writeBehind, final PatchDictionary dictionary,
+                                    final boolean writeBinary, final ScrapeJournal journal) throws InterruptedException {
+
         /* Only fix this weird character when writing the patch */
-    	String originalName = GathererScraper.removeNonAscii(exp.mName_gatherer);
-    	try {
-
-    		/* If there are multiple sets with the same code, use the tcgp name instead */
-    		if(ExpansionTableModel.containsMultipleCodes(expansions, exp.mCode_gatherer)) {
-    			exp.mName_gatherer = GathererScraper.removeNonAscii(exp.mName_tcgp);
-    		}
-    		else {
-    			exp.mName_gatherer = originalName;
-    		}
-            PatchGS patch = new PatchGS(exp, allCards);
-
-            File gzipout = new File(new File(mFilesPath, GathererScraper.PATCH_DIR), exp.mCode_gatherer + ".json.gzip");
-            GathererScraper.writeFile(patch, gzipout, true);
-        } catch (IOException e) {
-            e.printStackTrace();
+        exp.mName_gatherer = GathererScraper.removeNonAscii(exp.mName_gatherer);
+
+        /* The patch gets its own copy of the expansion, since it's written on another thread */
+        Expansion patchExpansion = new Expansion(exp);
+
+        /* If there are multiple sets with the same code, use the tcgp name instead */
+        if(ExpansionTableModel.containsMultipleCodes(expansions, exp.mCode_gatherer)) {
+            patchExpansion.mName_gatherer = GathererScraper.removeNonAscii(exp.mName_tcgp);
         }
-    	/* always revert to the original name */
-        exp.mName_gatherer = originalName;
+        final PatchGS patch = new PatchGS(patchExpansion, allCards);
+
+        final File patchDir = new File(mFilesPath, GathererScraper.PATCH_DIR);
+        final File patchFile = new File(patchDir, exp.mCode_gatherer + ".json.gzip");
+        final File dictionaryPatchFile = new File(patchDir, exp.mCode_gatherer + PatchDictionary.PATCH_EXTENSION);
+        final File binaryPatchFile = new File(patchDir, exp.mCode_gatherer + BinaryPatch.PATCH_EXTENSION);
+        final File deltaFile = new File(patchDir, exp.mCode_gatherer + PatchDelta.DELTA_EXTENSION);
+        writeBehind.submit(patchFile, () -> {
+            /* Serialize the patch once, computing the digest along the way */
+            PatchWriter.StagedPatch stagedPatch = PatchWriter.stage(patch, patchDir);
+
+            /* If the digest matches the one already recorded, leave the patch alone */
+            boolean unchanged = stagedPatch.getDigest().equals(exp.mDigest) && patchFile.exists();
+            boolean dictionaryUnchanged = (null == dictionary) || (unchanged && dictionary.isEncodedWith(dictionaryPatchFile));
+            if (unchanged) {
+                System.out.println("[" + exp.mCode_gatherer + "] Unchanged, not rewriting " + patchFile.getName());
+                incrementPatchesUnchanged();
+            }
+            /* Before the old patch is replaced, stage a delta from it. It's only
+             * committed once the new patch is written
+             */
+            PatchDelta.StagedDelta stagedDelta = null;
+            if (!unchanged && patchFile.exists()) {
+                try {
+                    stagedDelta = PatchDelta.stage(patchFile, patch, stagedPatch.getDigest(), deltaFile);
+                    System.out.println("[" + exp.mCode_gatherer + "] Delta has " + stagedDelta.getNumChanges() + " changed cards");
+                } catch (IOException e) {
+                    /* Clients can still download the whole patch */
+                    e.printStackTrace();
+                }
+            }
+
+            if (unchanged && dictionaryUnchanged) {
+                stagedPatch.discard();
+            } else {
+                try {
+                    stagedPatch.commit(unchanged ? null : patchFile, dictionaryUnchanged ? null : dictionaryPatchFile, dictionary);
+                } catch (IOException | RuntimeException e) {
+                    if (null != stagedDelta) {
+                        stagedDelta.discard();
+                    }
+                    throw e;
+                }
+                /* Only once the patch is written. If it wasn't, the old digest is
+                 * kept, so the next run sees a change and writes the patch again
+                 */
+                exp.mDigest = stagedPatch.getDigest();
+            }
+
+            /* A new patch gets its delta, or none at all. The last delta doesn't lead to it */
+            if (!unchanged) {
+                try {
+                    if (null != stagedDelta) {
+                        stagedDelta.commit(deltaFile);
+                    } else if (deltaFile.exists() && !deltaFile.delete()) {
+                        System.err.println("Couldn't delete " + deltaFile.getPath());
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    deltaFile.delete();
+                }
+            }
+
+            /* The binary patch is encoded from the patch itself, and checked against its JSON */
+            if (writeBinary && !(unchanged && binaryPatchFile.exists())) {
+                patch.mExpansion.mDigest = exp.mDigest;
+                BinaryPatch.writeFile(patch, binaryPatchFile);
+            }
+
+            /* Everything for this expansion is on the disk, so it won't be scraped again when resuming */
+            if (null != journal) {
+                journal.expansionFinished(exp, allCards);
+            }
+        });
     }
 
     /**
@@ -594,6 +860,13 @@ public class GathererScraperUi {
         mExpansionProgressBar.setValue(++mExpansionsProcessed);
     }
 
+    /**
+     * A synchronized wrapper to count patches which weren't rewritten
+     */
+    private synchronized void incrementPatchesUnchanged() {
+        mPatchesUnchanged++;
+    }
+
     /**
      * A synchronized wrapper to print to the UI what the last card scraped was
      *
@@ -0,0 +1,716 @@
+package com.gelakinetic.GathererScraper;
+
+import com.gelakinetic.GathererScraper.JsonTypes.Card;
+import com.gelakinetic.GathererScraper.JsonTypes.Card.ForeignPrinting;
+import com.gelakinetic.GathererScraper.JsonTypes.Expansion;
+import com.gelakinetic.GathererScraper.JsonTypes.LegalityData;
+import com.gelakinetic.GathererScraper.JsonTypes.Manifest;
+import com.gelakinetic.GathererScraper.JsonTypes.Manifest.ManifestEntry;
+import com.gelakinetic.GathererScraper.JsonTypes.Patch;
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * This factory has hand written TypeAdapters for the JSON types, so Gson
+ * doesn't need reflection or a FieldNamingStrategy to read and write them.
+ * The adapters write the same names, in the same order, with the same number
+ * formatting as the reflective adapters with PrefixedFieldNamingStrategy did,
+ * so the JSON is byte-identical. Null fields are written as null, and Gson
+ * drops them unless serializeNulls is set, just like it did before.
+ *
+ * Subclasses such as CardGS are written with their superclass's adapter, so
+ * any new non-transient field must be added here too. Subclasses are still read
+ * reflectively, since these adapters only create the base types
+ */
+class JsonTypeAdapterFactory implements TypeAdapterFactory {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> raw = type.getRawType();
+        Class<?> base;
+        TypeAdapter<?> adapter;
+        if (Card.class.isAssignableFrom(raw)) {
+            base = Card.class;
+            adapter = new CardAdapter();
+        } else if (Expansion.class.isAssignableFrom(raw)) {
+            base = Expansion.class;
+            adapter = new ExpansionAdapter();
+        } else if (Patch.class.isAssignableFrom(raw)) {
+            base = Patch.class;
+            adapter = new PatchAdapter(gson.getAdapter(Expansion.class), gson.getAdapter(Card.class));
+        } else if (Manifest.class.isAssignableFrom(raw)) {
+            base = Manifest.class;
+            adapter = new ManifestAdapter();
+        } else if (LegalityData.class.isAssignableFrom(raw)) {
+            base = LegalityData.class;
+            adapter = new LegalityDataAdapter();
+        } else {
+            return null;
+        }
+
+        if (raw == base) {
+            return (TypeAdapter<T>) adapter;
+        }
+        /* Write subclasses by hand, but read them reflectively so the right class is created */
+        return new WriteOnlyAdapter<>((TypeAdapter<T>) adapter, gson.getDelegateAdapter(this, type));
+    }
+
+    /**
+     * Writes with one adapter and reads with another
+     */
+    private static class WriteOnlyAdapter<T> extends TypeAdapter<T> {
+        private final TypeAdapter<T> mWriter;
+        private final TypeAdapter<T> mReader;
+
+        WriteOnlyAdapter(TypeAdapter<T> writer, TypeAdapter<T> reader) {
+            mWriter = writer;
+            mReader = reader;
+        }
+
+        @Override
+        public void write(JsonWriter out, T value) throws IOException {
+            mWriter.write(out, value);
+        }
+
+        @Override
+        public T read(JsonReader in) throws IOException {
+            return mReader.read(in);
+        }
+    }
+
+    /**
+     * Reads and writes a Card
+     */
+    private static class CardAdapter extends TypeAdapter<Card> {
+
+        @Override
+        public void write(JsonWriter out, Card card) throws IOException {
+            if (null == card) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("name").value(card.mName);
+            out.name("manaCost").value(card.mManaCost);
+            out.name("cmc").value(card.mCmc);
+            out.name("type").value(card.mType);
+            out.name("text").value(card.mText);
+            out.name("flavor").value(card.mFlavor);
+            out.name("expansion").value(card.mExpansion);
+            writeChar(out.name("rarity"), card.mRarity);
+            out.name("number").value(card.mNumber);
+            out.name("artist").value(card.mArtist);
+            out.name("color").value(card.mColor);
+            out.name("colorIdentity").value(card.getColorIdentity());
+            out.name("multiverseId").value(card.mMultiverseId);
+            writeFloat(out.name("power"), card.mPower);
+            writeFloat(out.name("toughness"), card.mToughness);
+            out.name("loyalty").value(card.mLoyalty);
+            out.name("foreignPrintings");
+            if (null == card.mForeignPrintings) {
+                out.nullValue();
+            } else {
+                out.beginArray();
+                for (ForeignPrinting fp : card.mForeignPrintings) {
+                    if (null == fp) {
+                        out.nullValue();
+                    } else {
+                        out.beginObject();
+                        out.name("name").value(fp.mName);
+                        out.name("languageCode").value(fp.mLanguageCode);
+                        out.endObject();
+                    }
+                }
+                out.endArray();
+            }
+            out.name("watermark").value(card.mWatermark);
+            out.endObject();
+        }
+
+        @Override
+        public Card read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            Card card = new Card();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL && isPrimitive(name)) {
+                    /* Leave primitives alone, like Gson does */
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "name":
+                        card.mName = readString(in);
+                        break;
+                    case "manaCost":
+                        card.mManaCost = readString(in);
+                        break;
+                    case "cmc":
+                        card.mCmc = in.nextInt();
+                        break;
+                    case "type":
+                        card.mType = readString(in);
+                        break;
+                    case "text":
+                        card.mText = readString(in);
+                        break;
+                    case "flavor":
+                        card.mFlavor = readString(in);
+                        break;
+                    case "expansion":
+                        card.mExpansion = readString(in);
+                        break;
+                    case "rarity":
+                        card.mRarity = readChar(in);
+                        break;
+                    case "number":
+                        card.mNumber = readString(in);
+                        break;
+                    case "artist":
+                        card.mArtist = readString(in);
+                        break;
+                    case "color":
+                        card.mColor = readString(in);
+                        break;
+                    case "colorIdentity":
+                        card.setColorIdentity(readString(in));
+                        break;
+                    case "multiverseId":
+                        card.mMultiverseId = in.nextInt();
+                        break;
+                    case "power":
+                        card.mPower = (float) in.nextDouble();
+                        break;
+                    case "toughness":
+                        card.mToughness = (float) in.nextDouble();
+                        break;
+                    case "loyalty":
+                        card.mLoyalty = in.nextInt();
+                        break;
+                    case "foreignPrintings":
+                        if (in.peek() == JsonToken.NULL) {
+                            in.nextNull();
+                            card.mForeignPrintings = null;
+                            break;
+                        }
+                        card.mForeignPrintings.clear();
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            if (in.peek() == JsonToken.NULL) {
+                                in.nextNull();
+                                continue;
+                            }
+                            ForeignPrinting fp = new ForeignPrinting();
+                            in.beginObject();
+                            while (in.hasNext()) {
+                                switch (in.nextName()) {
+                                    case "name":
+                                        fp.mName = readString(in);
+                                        break;
+                                    case "languageCode":
+                                        fp.mLanguageCode = readString(in);
+                                        break;
+                                    default:
+                                        in.skipValue();
+                                        break;
+                                }
+                            }
+                            in.endObject();
+                            card.mForeignPrintings.add(fp);
+                        }
+                        in.endArray();
+                        break;
+                    case "watermark":
+                        card.mWatermark = readString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return card;
+        }
+
+        /**
+         * @param name A JSON name in a card
+         * @return true if the field for that name is a primitive
+         */
+        private static boolean isPrimitive(String name) {
+            switch (name) {
+                case "cmc":
+                case "rarity":
+                case "multiverseId":
+                case "power":
+                case "toughness":
+                case "loyalty":
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    /**
+     * Reads and writes an Expansion
+     */
+    private static class ExpansionAdapter extends TypeAdapter<Expansion> {
+
+        @Override
+        public void write(JsonWriter out, Expansion expansion) throws IOException {
+            if (null == expansion) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("name_gatherer").value(expansion.mName_gatherer);
+            out.name("code_gatherer").value(expansion.mCode_gatherer);
+            out.name("code_mtgi").value(expansion.mCode_mtgi);
+            out.name("name_tcgp").value(expansion.mName_tcgp);
+            out.name("name_mkm").value(expansion.mName_mkm);
+            out.name("releaseTimestamp").value(expansion.mReleaseTimestamp);
+            out.name("canBeFoil").value(expansion.mCanBeFoil);
+            out.name("isOnlineOnly").value(expansion.mIsOnlineOnly);
+            out.name("borderColor").value(expansion.mBorderColor);
+            out.name("digest").value(expansion.mDigest);
+            writeStrings(out.name("expansionImageURLs"), expansion.mExpansionImageURLs);
+            out.endObject();
+        }
+
+        @Override
+        public Expansion read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            Expansion expansion = new Expansion();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                switch (name) {
+                    case "name_gatherer":
+                        expansion.mName_gatherer = readString(in);
+                        break;
+                    case "code_gatherer":
+                        expansion.mCode_gatherer = readString(in);
+                        break;
+                    case "code_mtgi":
+                        expansion.mCode_mtgi = readString(in);
+                        break;
+                    case "name_tcgp":
+                        expansion.mName_tcgp = readString(in);
+                        break;
+                    case "name_mkm":
+                        expansion.mName_mkm = readString(in);
+                        break;
+                    case "releaseTimestamp":
+                        if (in.peek() == JsonToken.NULL) {
+                            in.nextNull();
+                        } else {
+                            expansion.mReleaseTimestamp = in.nextLong();
+                        }
+                        break;
+                    case "canBeFoil":
+                        if (in.peek() == JsonToken.NULL) {
+                            in.nextNull();
+                        } else {
+                            expansion.mCanBeFoil = readBoolean(in);
+                        }
+                        break;
+                    case "isOnlineOnly":
+                        if (in.peek() == JsonToken.NULL) {
+                            in.nextNull();
+                        } else {
+                            expansion.mIsOnlineOnly = readBoolean(in);
+                        }
+                        break;
+                    case "borderColor":
+                        expansion.mBorderColor = readString(in);
+                        break;
+                    case "digest":
+                        expansion.mDigest = readString(in);
+                        break;
+                    case "expansionImageURLs":
+                        expansion.mExpansionImageURLs = readStrings(in, new ArrayList<>());
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return expansion;
+        }
+    }
+
+    /**
+     * Reads and writes a Patch, using the Card and Expansion adapters
+     */
+    private static class PatchAdapter extends TypeAdapter<Patch> {
+        private final TypeAdapter<Expansion> mExpansionAdapter;
+        private final TypeAdapter<Card> mCardAdapter;
+
+        PatchAdapter(TypeAdapter<Expansion> expansionAdapter, TypeAdapter<Card> cardAdapter) {
+            mExpansionAdapter = expansionAdapter;
+            mCardAdapter = cardAdapter;
+        }
+
+        @Override
+        public void write(JsonWriter out, Patch patch) throws IOException {
+            if (null == patch) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("expansion");
+            mExpansionAdapter.write(out, patch.mExpansion);
+            out.name("cards");
+            if (null == patch.mCards) {
+                out.nullValue();
+            } else {
+                out.beginArray();
+                for (Card card : patch.mCards) {
+                    mCardAdapter.write(out, card);
+                }
+                out.endArray();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public Patch read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            Patch patch = new Patch();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                switch (name) {
+                    case "expansion":
+                        patch.mExpansion = mExpansionAdapter.read(in);
+                        break;
+                    case "cards":
+                        if (in.peek() == JsonToken.NULL) {
+                            in.nextNull();
+                            patch.mCards = null;
+                            break;
+                        }
+                        patch.mCards = new ArrayList<>();
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            patch.mCards.add(mCardAdapter.read(in));
+                        }
+                        in.endArray();
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return patch;
+        }
+    }
+
+    /**
+     * Reads and writes a Manifest
+     */
+    private static class ManifestAdapter extends TypeAdapter<Manifest> {
+
+        @Override
+        public void write(JsonWriter out, Manifest manifest) throws IOException {
+            if (null == manifest) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("timestamp").value(manifest.mTimestamp);
+            out.name("patches").beginArray();
+            for (ManifestEntry entry : manifest.mPatches) {
+                if (null == entry) {
+                    out.nullValue();
+                    continue;
+                }
+                out.beginObject();
+                out.name("name").value(entry.mName);
+                out.name("uRL").value(entry.mURL);
+                out.name("code").value(entry.mCode);
+                out.name("digest").value(entry.mDigest);
+                writeStrings(out.name("expansionImageURLs"), entry.mExpansionImageURLs);
+                out.endObject();
+            }
+            out.endArray();
+            out.endObject();
+        }
+
+        @Override
+        public Manifest read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            Manifest manifest = new Manifest();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if ("timestamp".equals(name) && in.peek() != JsonToken.NULL) {
+                    manifest.mTimestamp = in.nextLong();
+                } else if ("patches".equals(name) && in.peek() != JsonToken.NULL) {
+                    manifest.mPatches.clear();
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        if (in.peek() == JsonToken.NULL) {
+                            in.nextNull();
+                            continue;
+                        }
+                        ManifestEntry entry = manifest.new ManifestEntry();
+                        in.beginObject();
+                        while (in.hasNext()) {
+                            switch (in.nextName()) {
+                                case "name":
+                                    entry.mName = readString(in);
+                                    break;
+                                case "uRL":
+                                    entry.mURL = readString(in);
+                                    break;
+                                case "code":
+                                    entry.mCode = readString(in);
+                                    break;
+                                case "digest":
+                                    entry.mDigest = readString(in);
+                                    break;
+                                case "expansionImageURLs":
+                                    entry.mExpansionImageURLs = readStrings(in, new ArrayList<>());
+                                    break;
+                                default:
+                                    in.skipValue();
+                                    break;
+                            }
+                        }
+                        in.endObject();
+                        manifest.mPatches.add(entry);
+                    }
+                    in.endArray();
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return manifest;
+        }
+    }
+
+    /**
+     * Reads and writes LegalityData
+     */
+    private static class LegalityDataAdapter extends TypeAdapter<LegalityData> {
+
+        @Override
+        public void write(JsonWriter out, LegalityData data) throws IOException {
+            if (null == data) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("formats");
+            if (null == data.mFormats) {
+                out.nullValue();
+            } else {
+                out.beginArray();
+                for (LegalityData.Format format : data.mFormats) {
+                    if (null == format) {
+                        out.nullValue();
+                        continue;
+                    }
+                    out.beginObject();
+                    out.name("name").value(format.mName);
+                    writeStrings(out.name("sets"), format.mSets);
+                    writeStrings(out.name("restrictedlist"), format.mRestrictedlist);
+                    writeStrings(out.name("banlist"), format.mBanlist);
+                    out.endObject();
+                }
+                out.endArray();
+            }
+            out.name("timestamp").value(data.mTimestamp);
+            out.endObject();
+        }
+
+        @Override
+        public LegalityData read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            LegalityData data = new LegalityData();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if ("timestamp".equals(name) && in.peek() != JsonToken.NULL) {
+                    data.mTimestamp = in.nextLong();
+                } else if ("formats".equals(name)) {
+                    if (in.peek() == JsonToken.NULL) {
+                        in.nextNull();
+                        data.mFormats = null;
+                        continue;
+                    }
+                    ArrayList<LegalityData.Format> formats = new ArrayList<>();
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        if (in.peek() == JsonToken.NULL) {
+                            in.nextNull();
+                            formats.add(null);
+                            continue;
+                        }
+                        LegalityData.Format format = data.new Format();
+                        in.beginObject();
+                        while (in.hasNext()) {
+                            switch (in.nextName()) {
+                                case "name":
+                                    format.mName = readString(in);
+                                    break;
+                                case "sets":
+                                    readStrings(in, format.mSets);
+                                    break;
+                                case "restrictedlist":
+                                    readStrings(in, format.mRestrictedlist);
+                                    break;
+                                case "banlist":
+                                    readStrings(in, format.mBanlist);
+                                    break;
+                                default:
+                                    in.skipValue();
+                                    break;
+                            }
+                        }
+                        in.endObject();
+                        formats.add(format);
+                    }
+                    in.endArray();
+                    data.mFormats = formats.toArray(new LegalityData.Format[formats.size()]);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return data;
+        }
+    }
+
+    /**
+     * Write a float the way Gson does, boxed so it's printed with Float.toString()
+     *
+     * @param out   The writer, with the name already written
+     * @param value The value to write
+     * @throws IOException If the value can't be written
+     */
+    private static void writeFloat(JsonWriter out, float value) throws IOException {
+        out.value(Float.valueOf(value));
+    }
+
+    /**
+     * Write a char the way Gson does, as a one character string
+     *
+     * @param out   The writer, with the name already written
+     * @param value The value to write
+     * @throws IOException If the value can't be written
+     */
+    private static void writeChar(JsonWriter out, char value) throws IOException {
+        out.value(String.valueOf(value));
+    }
+
+    /**
+     * Write a list of strings, or null if there is no list
+     *
+     * @param out     The writer, with the name already written
+     * @param strings The strings to write
+     * @throws IOException If the value can't be written
+     */
+    private static void writeStrings(JsonWriter out, List<String> strings) throws IOException {
+        if (null == strings) {
+            out.nullValue();
+            return;
+        }
+        out.beginArray();
+        for (String string : strings) {
+            out.value(string);
+        }
+        out.endArray();
+    }
+
+    /**
+     * @param in The reader
+     * @return The next string, or null if the next value is null
+     * @throws IOException If the value can't be read
+     */
+    private static String readString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    /**
+     * @param in The reader
+     * @return The next char, which is written as a one character string
+     * @throws IOException If the value can't be read
+     */
+    private static char readChar(JsonReader in) throws IOException {
+        String string = in.nextString();
+        if (string.length() != 1) {
+            throw new JsonSyntaxException("Expecting character, got: " + string);
+        }
+        return string.charAt(0);
+    }
+
+    /**
+     * @param in The reader
+     * @return The next boolean, which may be written as a string
+     * @throws IOException If the value can't be read
+     */
+    private static boolean readBoolean(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.STRING) {
+            return Boolean.parseBoolean(in.nextString());
+        }
+        return in.nextBoolean();
+    }
+
+    /**
+     * Read an array of strings into a collection
+     *
+     * @param in      The reader
+     * @param strings The collection to add the strings to
+     * @return The collection, or null if the next value is null
+     * @throws IOException If the value can't be read
+     */
+    private static <C extends Collection<String>> C readStrings(JsonReader in, C strings) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        in.beginArray();
+        while (in.hasNext()) {
+            strings.add(readString(in));
+        }
+        in.endArray();
+        return strings;
+    }
+}
@@ -2,7 +2,6 @@ package com.gelakinetic.GathererScraper.JsonTypes;
 
 import com.gelakinetic.mtgfam.helpers.database.CardDbAdapter;
 
-import java.util.ArrayList;
 
 /*
  * This class contains all information about a scraped card
@@ -61,20 +60,65 @@ public class Card implements Comparable<Card> {
     public int mLoyalty = CardDbAdapter.NO_ONE_CARES;
 
     // All the card's foreign printings
-    public ArrayList<ForeignPrinting> mForeignPrintings = new ArrayList<>();
+    public ForeignPrintingList mForeignPrintings = new ForeignPrintingList();
 
     // The card's loyalty. An integer in practice
     public String mWatermark = "";
 
-    // Private class for encapsulating foreign printing information
-    public class ForeignPrinting implements Comparable<ForeignPrinting> {
+    // The fields the cached sort key was built from, see updateSortKey()
+    private transient boolean mSortKeyValid = false;
+    private transient String mSortKeyNumber;
+    private transient String mSortKeyColor;
+    private transient String mSortKeyExpansion;
+    private transient String mSortKeyType;
+
+    // The cached sort key. The number is the integer part shifted left over the letter after it
+    private transient boolean mHasSortNumber;
+    private transient long mSortNumber;
+    private transient int mSortColor;
+    private transient boolean mSortIsBattleRoyale;
+    private transient boolean mSortIsBasicLand;
+
+    // Class for encapsulating foreign printing information
+    public static class ForeignPrinting implements Comparable<ForeignPrinting> {
         public String mName;
         public String mLanguageCode;
 
+        // The Language for mLanguageCode, see getLanguage()
+        private transient Language mLanguage;
+
+        public ForeignPrinting() {
+        }
+
+        public ForeignPrinting(Language language, String name) {
+            mName = name;
+            mLanguageCode = language.mCode;
+            mLanguage = language;
+        }
+
+        /**
+         * @return The Language for this printing's code, or null if the code
+         * isn't a known Language. It's only looked up when the code changes
+         */
+        public Language getLanguage() {
+            if (null == mLanguage || mLanguage.mCode != mLanguageCode) {
+                mLanguage = Language.fromCode(mLanguageCode);
+            }
+            return mLanguage;
+        }
+
         @Override
         public int compareTo(ForeignPrinting o) {
             int comp;
-            if(0 == (comp = (mLanguageCode.compareTo(o.mLanguageCode)))) {
+            Language language = getLanguage();
+            Language otherLanguage = o.getLanguage();
+            if (null != language && null != otherLanguage) {
+                /* Languages are declared in code order */
+                comp = language.compareTo(otherLanguage);
+            } else {
+                comp = mLanguageCode.compareTo(o.mLanguageCode);
+            }
+            if(0 == comp) {
             	return mName.compareTo(o.mName);
             }
             return comp;
@@ -83,11 +127,19 @@ public class Card implements Comparable<Card> {
         @Override
         public boolean equals(Object arg0) {
             if (arg0 instanceof ForeignPrinting) {
-            	return mLanguageCode.equals(((ForeignPrinting)arg0).mLanguageCode) &&
-            			mName.equals(((ForeignPrinting)arg0).mName);
+                Language language = getLanguage();
+                boolean sameLanguage = (null != language) ?
+                        (language == ((ForeignPrinting)arg0).getLanguage()) :
+                        mLanguageCode.equals(((ForeignPrinting)arg0).mLanguageCode);
+            	return sameLanguage && mName.equals(((ForeignPrinting)arg0).mName);
             }
             return false;
         }
+
+        @Override
+        public int hashCode() {
+            return 31 * mLanguageCode.hashCode() + mName.hashCode();
+        }
     }
 
     /**
@@ -99,24 +151,18 @@ public class Card implements Comparable<Card> {
     @Override
     public int compareTo(Card other) {
 
+        this.updateSortKey();
+        other.updateSortKey();
+
         /* Sort by collector's number */
-        if (this.mNumber != null && other.mNumber != null && this.mNumber.length() > 0 && other.mNumber.length() > 0) {
+        if (this.mHasSortNumber && other.mHasSortNumber) {
 
-            // Try comparing by integer number
-            int switchOn = Integer.compare(this.getNumberInteger(), other.getNumberInteger());
+            // Try comparing by integer number, then by the letter after the number
+            int switchOn = Long.compare(this.mSortNumber, other.mSortNumber);
             switch(switchOn) {
                 case 0: {
-                    // If they match, try comparing by letter after the number
-                    switchOn = Character.compare(this.getNumberChar(), other.getNumberChar());
-                    switch(switchOn) {
-                        case 0: {
-                            // If they match, try comparing by name
-                            return this.mName.compareTo(other.mName);
-                        }
-                        default: {
-                            return switchOn;
-                        }
-                    }
+                    // If they match, try comparing by name
+                    return this.mName.compareTo(other.mName);
                 }
                 default: {
                     return switchOn;
@@ -125,11 +171,11 @@ public class Card implements Comparable<Card> {
         }
 
         /* Battle Royale is pure alphabetical, except for basics, why not */
-        if (this.mExpansion.equals("BR")) {
-            if (this.mType.contains("Basic Land") && !other.mType.contains("Basic Land")) {
+        if (this.mSortIsBattleRoyale) {
+            if (this.mSortIsBasicLand && !other.mSortIsBasicLand) {
                 return 1;
             }
-            if (!this.mType.contains("Basic Land") && other.mType.contains("Basic Land")) {
+            if (!this.mSortIsBasicLand && other.mSortIsBasicLand) {
                 return -1;
             }
             return this.mName.compareTo(other.mName);
@@ -139,7 +185,7 @@ public class Card implements Comparable<Card> {
          * Or if that doesn't exist, sort by color order. Weird for
          * magiccards.info
          */
-        int switchOn = Integer.compare(this.getNumFromColor(), other.getNumFromColor());
+        int switchOn = Integer.compare(this.mSortColor, other.mSortColor);
         switch (switchOn) {
             case 0: {
                 // They match, try comparing by name
@@ -152,6 +198,33 @@ public class Card implements Comparable<Card> {
         }
     }
 
+    /**
+     * Rebuilds the cached sort key if any of the fields it was built from were
+     * reassigned since. The fields are public and set directly, so they are
+     * checked by reference. That is cheap, and once the key is built, sorting
+     * doesn't parse or allocate anything. The name is always compared directly
+     */
+    private void updateSortKey() {
+        if (mSortKeyValid && mSortKeyNumber == mNumber && mSortKeyColor == mColor &&
+                mSortKeyExpansion == mExpansion && mSortKeyType == mType) {
+            return;
+        }
+
+        mHasSortNumber = (mNumber != null && mNumber.length() > 0);
+        if (mHasSortNumber) {
+            mSortNumber = ((long) getNumberInteger() << 16) | getNumberChar();
+        }
+        mSortColor = (mColor != null && mColor.length() > 0 && mExpansion != null) ? getNumFromColor() : 8;
+        mSortIsBattleRoyale = "BR".equals(mExpansion);
+        mSortIsBasicLand = (mType != null && mType.contains("Basic Land"));
+
+        mSortKeyNumber = mNumber;
+        mSortKeyColor = mColor;
+        mSortKeyExpansion = mExpansion;
+        mSortKeyType = mType;
+        mSortKeyValid = true;
+    }
+
     /**
      * Returns a number used for sorting by color. This is different for
      * Beatdown because magiccards.info is weird
@@ -239,4 +312,18 @@ public class Card implements Comparable<Card> {
         }
         return 0;
     }
+
+    /**
+     * @return The card's color identity
+     */
+    public String getColorIdentity() {
+        return mColorIdentity;
+    }
+
+    /**
+     * @param colorIdentity The card's color identity
+     */
+    public void setColorIdentity(String colorIdentity) {
+        mColorIdentity = colorIdentity;
+    }
 }
\ No newline at end of file
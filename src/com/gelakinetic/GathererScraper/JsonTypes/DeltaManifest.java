@@ -0,0 +1,30 @@
+package com.gelakinetic.GathererScraper.JsonTypes;
+
+import java.util.ArrayList;
+
+/**
+ * A manifest for delta patches. It's kept apart from the Manifest, since new
+ * fields can't be added there
+ */
+public class DeltaManifest {
+
+    public long mTimestamp;
+    public final ArrayList<DeltaManifestEntry> mDeltas = new ArrayList<>();
+
+    public class DeltaManifestEntry implements Comparable<DeltaManifestEntry> {
+        public String mCode;
+        public String mURL;
+
+        // The digest of the patch the delta applies to
+        public String mBaseDigest;
+
+        // The digest of the patch the delta makes, the same as the manifest's
+        public String mDigest;
+
+        @Override
+        public int compareTo(DeltaManifestEntry o) {
+            return mCode.compareTo(o.mCode);
+        }
+    }
+
+}
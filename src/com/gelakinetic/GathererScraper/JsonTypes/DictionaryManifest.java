@@ -0,0 +1,31 @@
+package com.gelakinetic.GathererScraper.JsonTypes;
+
+import java.util.ArrayList;
+
+/**
+ * A manifest for patches encoded with a preset dictionary. It's kept apart
+ * from the Manifest, since new fields can't be added there
+ */
+public class DictionaryManifest {
+
+    public long mTimestamp;
+
+    // The Adler-32 of the dictionary, as eight hex digits, which is also the DICTID in each patch
+    public String mDictionaryId;
+    public String mDictionaryURL;
+    public final ArrayList<DictionaryManifestEntry> mPatches = new ArrayList<>();
+
+    public class DictionaryManifestEntry implements Comparable<DictionaryManifestEntry> {
+        public String mCode;
+        public String mURL;
+
+        // The digest of the decoded patch, the same as the gzipped patch's
+        public String mDigest;
+
+        @Override
+        public int compareTo(DictionaryManifestEntry o) {
+            return mCode.compareTo(o.mCode);
+        }
+    }
+
+}
@@ -42,4 +42,26 @@ public class Expansion {
     
     // List of image URLs
     public ArrayList<String> mExpansionImageURLs = new ArrayList<>();
+
+    public Expansion() {
+    }
+
+    /**
+     * Creates a copy of an expansion. The image URL list is copied too
+     *
+     * @param other The expansion to copy
+     */
+    public Expansion(Expansion other) {
+        mName_gatherer = other.mName_gatherer;
+        mCode_gatherer = other.mCode_gatherer;
+        mCode_mtgi = other.mCode_mtgi;
+        mName_tcgp = other.mName_tcgp;
+        mName_mkm = other.mName_mkm;
+        mReleaseTimestamp = other.mReleaseTimestamp;
+        mCanBeFoil = other.mCanBeFoil;
+        mIsOnlineOnly = other.mIsOnlineOnly;
+        mBorderColor = other.mBorderColor;
+        mDigest = other.mDigest;
+        mExpansionImageURLs = (null == other.mExpansionImageURLs) ? null : new ArrayList<>(other.mExpansionImageURLs);
+    }
 }
@@ -0,0 +1,140 @@
+package com.gelakinetic.GathererScraper.JsonTypes;
+
+import com.gelakinetic.GathererScraper.JsonTypes.Card.ForeignPrinting;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * This list holds a card's foreign printings, stored in a slot for each
+ * Language ordinal. Adding a printing which is already in the list does
+ * nothing, and the list is always in sorted order, by language code and then
+ * by name, so it never needs to be sorted. It serializes to the same JSON
+ * array as an ArrayList would
+ */
+public class ForeignPrintingList extends AbstractList<ForeignPrinting> {
+
+    /* The printings for each Language ordinal, sorted by name. Almost always a single printing */
+    private final ForeignPrinting[][] mByLanguage = new ForeignPrinting[Language.values().length][];
+
+    /* Printings with a language code which isn't a Language, sorted. Usually null */
+    private ArrayList<ForeignPrinting> mOther = null;
+
+    private int mSize = 0;
+
+    /**
+     * Add a foreign printing in sorted order, unless it's already in the list
+     *
+     * @param fp The foreign printing to add
+     * @return true if the printing was added, false if it was already in the list
+     */
+    @Override
+    public boolean add(ForeignPrinting fp) {
+        Language language = fp.getLanguage();
+        if (null == language) {
+            if (null == mOther) {
+                mOther = new ArrayList<>(1);
+            }
+            int idx = Collections.binarySearch(mOther, fp);
+            if (idx >= 0) {
+                return false;
+            }
+            mOther.add(-(idx + 1), fp);
+        } else {
+            /* Share the code string with every other printing in this language */
+            fp.mLanguageCode = language.mCode;
+
+            ForeignPrinting[] printings = mByLanguage[language.ordinal()];
+            if (null == printings) {
+                mByLanguage[language.ordinal()] = new ForeignPrinting[]{fp};
+            } else {
+                int idx = Arrays.binarySearch(printings, fp);
+                if (idx >= 0) {
+                    return false;
+                }
+                idx = -(idx + 1);
+                ForeignPrinting[] grown = new ForeignPrinting[printings.length + 1];
+                System.arraycopy(printings, 0, grown, 0, idx);
+                grown[idx] = fp;
+                System.arraycopy(printings, idx, grown, idx + 1, printings.length - idx);
+                mByLanguage[language.ordinal()] = grown;
+            }
+        }
+        mSize++;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * @param o The object to look for
+     * @return true if an equal foreign printing is in the list
+     */
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof ForeignPrinting)) {
+            return false;
+        }
+        ForeignPrinting fp = (ForeignPrinting) o;
+        Language language = fp.getLanguage();
+        if (null == language) {
+            return null != mOther && Collections.binarySearch(mOther, fp) >= 0;
+        }
+        ForeignPrinting[] printings = mByLanguage[language.ordinal()];
+        return null != printings && Arrays.binarySearch(printings, fp) >= 0;
+    }
+
+    /**
+     * Get a foreign printing in sorted order. Printings with unknown language
+     * codes are merged in with the rest by code
+     *
+     * @param index The index of the printing
+     * @return The printing at that index
+     */
+    @Override
+    public ForeignPrinting get(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+        }
+        int otherIdx = 0;
+        for (ForeignPrinting[] printings : mByLanguage) {
+            if (null == printings) {
+                continue;
+            }
+            /* Unknown codes which sort before this language come first */
+            while (null != mOther && otherIdx < mOther.size() &&
+                    mOther.get(otherIdx).mLanguageCode.compareTo(printings[0].mLanguageCode) < 0) {
+                if (0 == index) {
+                    return mOther.get(otherIdx);
+                }
+                index--;
+                otherIdx++;
+            }
+            if (index < printings.length) {
+                return printings[index];
+            }
+            index -= printings.length;
+        }
+        return mOther.get(otherIdx + index);
+    }
+
+    /**
+     * @return The number of foreign printings
+     */
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Remove all foreign printings
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(mByLanguage, null);
+        mOther = null;
+        mSize = 0;
+        modCount++;
+    }
+}
@@ -0,0 +1,59 @@
+package com.gelakinetic.GathererScraper.JsonTypes;
+
+import java.util.HashMap;
+
+/**
+ * Enum of the languages cards are printed in, their language codes, and the
+ * labels Gatherer uses for them. The constants are declared in the same order
+ * as their codes sort, so ordinals can be compared instead of codes
+ */
+public enum Language {
+    German("de", "German"),
+    English("en", "English"),
+    Spanish("es", "Spanish"),
+    French("fr", "French"),
+    Italian("it", "Italian"),
+    Japanese("ja", "Japanese"),
+    Korean("ko", "Korean"),
+    Portuguese_Brazil("pt_BR", "Portuguese (Brazil)"),
+    Russian("ru", "Russian"),
+    Chinese_Simplified("zh_HANS", "Chinese Simplified"),
+    Chinese_Traditional("zh_HANT", "Chinese Traditional");
+
+    private static final HashMap<String, Language> BY_CODE = new HashMap<>();
+    private static final HashMap<String, Language> BY_GATHERER_LABEL = new HashMap<>();
+
+    static {
+        for (Language language : values()) {
+            BY_CODE.put(language.mCode, language);
+            BY_GATHERER_LABEL.put(language.mGathererLabel, language);
+        }
+    }
+
+    /* The language code, as written in the JSON */
+    public final String mCode;
+
+    /* The language's name on Gatherer's language page */
+    public final String mGathererLabel;
+
+    Language(String code, String gathererLabel) {
+        mCode = code;
+        mGathererLabel = gathererLabel;
+    }
+
+    /**
+     * @param code A language code, like "pt_BR"
+     * @return The Language with that code, or null if there isn't one
+     */
+    public static Language fromCode(String code) {
+        return (null == code) ? null : BY_CODE.get(code);
+    }
+
+    /**
+     * @param label A language's name on Gatherer, like "Portuguese (Brazil)"
+     * @return The Language with that label, or null if there isn't one
+     */
+    public static Language fromGathererLabel(String label) {
+        return (null == label) ? null : BY_GATHERER_LABEL.get(label);
+    }
+}
@@ -1,13 +1,13 @@
 package com.gelakinetic.GathererScraper.JsonTypesGS;
 
 import com.gelakinetic.GathererScraper.JsonTypes.Card;
+import com.gelakinetic.GathererScraper.JsonTypes.ForeignPrintingList;
 import org.apache.commons.lang3.SerializationUtils;
+import org.apache.commons.lang3.StringUtils;
 
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
 
 /**
  * This class contains all information about a scraped card
@@ -17,6 +17,12 @@ import java.util.regex.Pattern;
 public class CardGS extends Card implements Serializable {
     private static final long serialVersionUID = 7961150645687367029L;
 
+    /* The basic land types, indexed the same as the bits in ColorMask.WUBRG */
+    private static final String BASIC_LAND_TYPES[] = {"Plains", "Island", "Swamp", "Mountain", "Forest"};
+
+    /* This face's color identity as a ColorMask, see calculateFaceColorIdentity() */
+    private transient int mFaceColorIdentity = 0;
+
     /**
      * Creates a card object with the basic information. The rest will be
      * scraped later
@@ -31,6 +37,38 @@ public class CardGS extends Card implements Serializable {
         this.mExpansion = expansion;
     }
 
+    /**
+     * Creates a copy of a card, like one read from an old patch, so it can be
+     * used without scraping it again. The foreign printings are copied too
+     *
+     * @param card The card to copy
+     */
+    public CardGS(Card card) {
+        this.mName = card.mName;
+        this.mManaCost = card.mManaCost;
+        this.mCmc = card.mCmc;
+        this.mType = card.mType;
+        this.mText = card.mText;
+        this.mFlavor = card.mFlavor;
+        this.mExpansion = card.mExpansion;
+        this.mRarity = card.mRarity;
+        this.mNumber = card.mNumber;
+        this.mArtist = card.mArtist;
+        this.mColor = card.mColor;
+        this.mColorIdentity = card.getColorIdentity();
+        this.mMultiverseId = card.mMultiverseId;
+        this.mPower = card.mPower;
+        this.mToughness = card.mToughness;
+        this.mLoyalty = card.mLoyalty;
+        if (null == card.mForeignPrintings) {
+            this.mForeignPrintings = null;
+        } else {
+            this.mForeignPrintings = new ForeignPrintingList();
+            this.mForeignPrintings.addAll(card.mForeignPrintings);
+        }
+        this.mWatermark = card.mWatermark;
+    }
+
     /**
      * Returns a string URL for this card's gatherer page
      *
@@ -87,11 +125,28 @@ public class CardGS extends Card implements Serializable {
             mWatermark = "";
         }
         if (null == mForeignPrintings) {
-            mForeignPrintings = new ArrayList<>();
+            mForeignPrintings = new ForeignPrintingList();
         }
         /* Don't worry about mRarity, mPower, mToughness, or mLoyalty */
     }
 
+    /**
+     * Replaces this card's low cardinality strings with pooled instances shared
+     * by every card, so they aren't duplicated across the catalog. The colors
+     * aren't pooled, they already come from ColorMask's shared strings, and
+     * foreign language codes are shared by ForeignPrintingList. The card's
+     * JSON doesn't change
+     *
+     * @param pool The pool to share strings from
+     */
+    public void compact(StringPool pool) {
+        mManaCost = pool.intern(mManaCost);
+        mType = pool.intern(mType);
+        mExpansion = pool.intern(mExpansion);
+        mArtist = pool.intern(mArtist);
+        mWatermark = pool.intern(mWatermark);
+    }
+
     /**
      * Two cards are equal if their multiverseId is the same, and their name is
      * the same. Halves of split cards do not satisfy this
@@ -106,6 +161,17 @@ public class CardGS extends Card implements Serializable {
         return (((CardGS) arg0).mMultiverseId == this.mMultiverseId) && ((CardGS) arg0).mName.equals(this.mName);
     }
 
+    /**
+     * The hash is built from the same identity as equals(), the multiverseId
+     * and the name, so cards can be deduplicated in hashed collections
+     *
+     * @return A hash code for this card's identity
+     */
+    @Override
+    public int hashCode() {
+        return 31 * mMultiverseId + (null == mName ? 0 : mName.hashCode());
+    }
+
     /**
      * @return The byte array representation of this object
      */
@@ -122,74 +188,39 @@ public class CardGS extends Card implements Serializable {
 
     /**
      * Calculates the mColor identity for this card, not counting any parts of a
-     * multicard
-     *
-     * @return A mColor identity string for the given card consisting of "WUBRG"
+     * multicard, and stores it as a ColorMask. This must be called for every
+     * face before calculateColorIdentity()
      */
-    private String getColorIdentity() {
-        boolean colors[] = {false, false, false, false, false};
-        String colorLetters[] = {"W", "U", "B", "R", "G"};
-        String basicLandTypes[] = {"Plains", "Island", "Swamp", "Mountain",
-                "Forest"};
-
+    public void calculateFaceColorIdentity() {
         /* Search for colors in the cost & mColor */
-        for (int i = 0; i < colors.length; i++) {
-            if (mColor.contains(colorLetters[i])) {
-                colors[i] = true;
-            }
-            if (mManaCost.contains(colorLetters[i])) {
-                colors[i] = true;
-            }
-        }
+        int identity = ColorMask.fromLetters(mColor, ColorMask.WUBRG) |
+                ColorMask.fromLetters(mManaCost, ColorMask.WUBRG);
 
-        /* Remove reminder text */
-        String noReminderText = mText.replaceAll("\\([^\\(\\)]+\\)", "");
-        /* Find mana symbols in the rest of the text */
-        Pattern manaPattern = Pattern.compile("\\{[^\\{\\}]+\\}");
-        Matcher m = manaPattern.matcher(noReminderText);
-        while (m.find()) {
-            /* Search for colors in the mana symbols in the non-reminder text */
-            for (int i = 0; i < colors.length; i++) {
-                if (m.group(0).contains(colorLetters[i])) {
-                    colors[i] = true;
-                }
-            }
-        }
+        /* Find mana symbols in the non-reminder text */
+        identity |= ColorMask.fromManaSymbols(mText);
 
         /* For typed lands, add mColor identity */
-        if (mType.toLowerCase().contains("land")) {
-            for (int i = 0; i < colors.length; i++) {
-                if (mType.contains(basicLandTypes[i])) {
-                    colors[i] = true;
+        if (StringUtils.containsIgnoreCase(mType, "land")) {
+            for (int i = 0; i < BASIC_LAND_TYPES.length; i++) {
+                if (mType.contains(BASIC_LAND_TYPES[i])) {
+                    identity |= (1 << i);
                 }
             }
         }
-
-        /* Write the mColor identity */
-        StringBuilder colorIdentity = new StringBuilder();
-        for (int i = 0; i < colors.length; i++) {
-            if (colors[i]) {
-                colorIdentity.append(colorLetters[i]);
-            }
-        }
-        return colorIdentity.toString();
+        mFaceColorIdentity = identity;
     }
 
     /**
      * Calculates the full mColor identity for this card, and stores it in
      * mColorIdentity
      *
-     * @param otherCards A list of other cards, used to find the second part if this is
-     *                   a multi-card
+     * @param facesByNumber All the faces in this expansion, keyed by number, used to
+     *                      find the second part if this is a multi-card
      */
-    public void calculateColorIdentity(ArrayList<CardGS> otherCards) {
-        String colorLetters[] = {"W", "U", "B", "R", "G"};
-
-        /* Get the mColor identity for the first part of the card */
-        String firstPartIdentity = getColorIdentity();
+    public void calculateColorIdentity(Map<String, CardGS> facesByNumber) {
+        int identity = mFaceColorIdentity;
 
         /* Find the mColor identity for multicards */
-        String secondPartIdentity = "";
         String newNumber = null;
         if (mNumber.contains("a")) {
             newNumber = mNumber.replace("a", "b");
@@ -197,22 +228,12 @@ public class CardGS extends Card implements Serializable {
             newNumber = mNumber.replace("b", "a");
         }
         if (newNumber != null) {
-            for (CardGS otherCard : otherCards) {
-                if (otherCard.mNumber.equals(newNumber)) {
-                    secondPartIdentity = otherCard.getColorIdentity();
-                    break;
-                }
+            CardGS otherCard = facesByNumber.get(newNumber);
+            if (otherCard != null) {
+                identity |= otherCard.mFaceColorIdentity;
             }
         }
 
-        /* Combine the two mColor identity parts into one */
-        StringBuilder identityBuilder = new StringBuilder();
-        for (String colorLetter : colorLetters) {
-            if (firstPartIdentity.contains(colorLetter)
-                    || secondPartIdentity.contains(colorLetter)) {
-                identityBuilder.append(colorLetter);
-            }
-        }
-        mColorIdentity = identityBuilder.toString();
+        mColorIdentity = ColorMask.toColorString(identity);
     }
 }
\ No newline at end of file
@@ -0,0 +1,192 @@
+package com.gelakinetic.GathererScraper.JsonTypesGS;
+
+/**
+ * This class holds helpers for keeping a card's colors as a bitmask. The color
+ * strings written to patches all come from a precomputed table, so they are
+ * never built letter by letter for each card
+ */
+public final class ColorMask {
+
+    public static final int WHITE = 1;
+    public static final int BLUE = 1 << 1;
+    public static final int BLACK = 1 << 2;
+    public static final int RED = 1 << 3;
+    public static final int GREEN = 1 << 4;
+    public static final int ARTIFACT = 1 << 5;
+    public static final int LAND = 1 << 6;
+    public static final int COLORLESS = 1 << 7;
+
+    /* All five colors, which is all a color identity can have */
+    public static final int WUBRG = WHITE | BLUE | BLACK | RED | GREEN;
+
+    /* Every combination of bits as a string, in the order the patches use */
+    private static final String COLOR_STRINGS[] = new String[COLORLESS << 1];
+
+    static {
+        char letters[] = {'A', 'L', 'W', 'U', 'B', 'R', 'G'};
+        int bits[] = {ARTIFACT, LAND, WHITE, BLUE, BLACK, RED, GREEN};
+        for (int mask = 0; mask < COLOR_STRINGS.length; mask++) {
+            if (0 != (mask & COLORLESS)) {
+                COLOR_STRINGS[mask] = "C";
+                continue;
+            }
+            StringBuilder colors = new StringBuilder();
+            for (int i = 0; i < bits.length; i++) {
+                if (0 != (mask & bits[i])) {
+                    colors.append(letters[i]);
+                }
+            }
+            COLOR_STRINGS[mask] = colors.toString();
+        }
+    }
+
+    private ColorMask() {
+    }
+
+    /**
+     * @param mask A bitmask of colors
+     * @return The color string for the mask, i.e. "ALWUBRG" order, or "C" if
+     * the COLORLESS bit is set
+     */
+    public static String toColorString(int mask) {
+        return COLOR_STRINGS[mask & (COLOR_STRINGS.length - 1)];
+    }
+
+    /**
+     * @param letter A single color letter, like 'W' or 'A'
+     * @return The bit for that letter, or 0 if it isn't a color letter
+     */
+    public static int fromLetter(char letter) {
+        switch (letter) {
+            case 'W':
+                return WHITE;
+            case 'U':
+                return BLUE;
+            case 'B':
+                return BLACK;
+            case 'R':
+                return RED;
+            case 'G':
+                return GREEN;
+            case 'A':
+                return ARTIFACT;
+            case 'L':
+                return LAND;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Finds every color letter anywhere in a string, like a mana cost or a
+     * color string
+     *
+     * @param letters The string to search, may be null
+     * @param allowed The bits to keep, i.e. WUBRG to ignore 'A' and 'L'
+     * @return A bitmask of the letters found
+     */
+    public static int fromLetters(String letters, int allowed) {
+        int mask = 0;
+        if (null != letters) {
+            for (int i = 0; i < letters.length(); i++) {
+                mask |= fromLetter(letters.charAt(i));
+            }
+        }
+        return mask & allowed;
+    }
+
+    /**
+     * Finds colors in a color indicator, which spells out the color names
+     *
+     * @param colorNames The color indicator, like "White, Blue"
+     * @return A bitmask of the colors found
+     */
+    public static int fromColorNames(String colorNames) {
+        int mask = 0;
+        if (colorNames.contains("White")) {
+            mask |= WHITE;
+        }
+        if (colorNames.contains("Blue")) {
+            mask |= BLUE;
+        }
+        if (colorNames.contains("Black")) {
+            mask |= BLACK;
+        }
+        if (colorNames.contains("Red")) {
+            mask |= RED;
+        }
+        if (colorNames.contains("Green")) {
+            mask |= GREEN;
+        }
+        return mask;
+    }
+
+    /**
+     * Finds the colors of all the {mana symbols} in a card's text, ignoring
+     * (reminder text). This is a single scan which matches what removing
+     * "\([^\(\)]+\)" and then searching for "\{[^\{\}]+\}" would find, without
+     * copying the text
+     *
+     * @param text The card's text
+     * @return A bitmask of the colors in the text's mana symbols
+     */
+    public static int fromManaSymbols(String text) {
+        int mask = 0;
+        int symbolMask = 0;
+        /* The number of characters in the current symbol, or -1 if not in one */
+        int symbolLength = -1;
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if ('(' == c) {
+                int reminderEnd = findReminderTextEnd(text, i);
+                if (reminderEnd > 0) {
+                    /* Skip it, it's as if it were never there */
+                    i = reminderEnd + 1;
+                    continue;
+                }
+            }
+            switch (c) {
+                case '{': {
+                    symbolMask = 0;
+                    symbolLength = 0;
+                    break;
+                }
+                case '}': {
+                    if (symbolLength > 0) {
+                        mask |= symbolMask;
+                    }
+                    symbolLength = -1;
+                    break;
+                }
+                default: {
+                    if (symbolLength >= 0) {
+                        symbolLength++;
+                        symbolMask |= fromLetter(c);
+                    }
+                    break;
+                }
+            }
+            i++;
+        }
+        return mask & WUBRG;
+    }
+
+    /**
+     * @param text  The text to search
+     * @param start The index of a '('
+     * @return The index of the ')' closing a non-empty group without nested
+     * parentheses, or -1 if the '(' doesn't start one
+     */
+    private static int findReminderTextEnd(String text, int start) {
+        for (int i = start + 1; i < text.length(); i++) {
+            switch (text.charAt(i)) {
+                case '(':
+                    return -1;
+                case ')':
+                    return (i > start + 1) ? i : -1;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,188 @@
+package com.gelakinetic.GathererScraper.JsonTypesGS;
+
+import com.gelakinetic.GathererScraper.JsonTypes.Card;
+import com.gelakinetic.GathererScraper.JsonTypes.ForeignPrintingList;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A card packed small, for holding an expansion's cards while the rest of it
+ * is scraped. A CardGS is a few dozen objects once its strings, foreign
+ * printing list and printings are counted, and it keeps a cached sort key.
+ * This keeps the low cardinality strings as pooled instances, the numbers as
+ * primitives, and everything else, the text, flavor, number and foreign
+ * printings, as one UTF-8 array.
+ *
+ * The name and multiverse ID are kept as they are, so cards can be
+ * deduplicated without unpacking them. unpack() makes a CardGS with the same
+ * JSON as the card this was packed from
+ */
+public class CompactCard {
+
+    /* Marks a null string or foreign printing list in the packed array */
+    private static final int NULL_LENGTH = -1;
+
+    private final String mName;
+    private final int mMultiverseId;
+
+    /* Low cardinality strings, shared through a StringPool */
+    private final String mManaCost;
+    private final String mType;
+    private final String mExpansion;
+    private final String mArtist;
+    private final String mColor;
+    private final String mColorIdentity;
+    private final String mWatermark;
+
+    private final int mCmc;
+    private final char mRarity;
+    private final float mPower;
+    private final float mToughness;
+    private final int mLoyalty;
+
+    /* The text, flavor, number, then the foreign printings' count and each one's language code and name */
+    private final byte[] mPacked;
+
+    /**
+     * Pack a card. The card isn't changed, and nothing in it is kept except
+     * strings
+     *
+     * @param card The card to pack
+     * @param pool The pool to share low cardinality strings from
+     */
+    public CompactCard(Card card, StringPool pool) {
+        mName = card.mName;
+        mMultiverseId = card.mMultiverseId;
+
+        mManaCost = pool.intern(card.mManaCost);
+        mType = pool.intern(card.mType);
+        mExpansion = pool.intern(card.mExpansion);
+        mArtist = pool.intern(card.mArtist);
+        mColor = pool.intern(card.mColor);
+        mColorIdentity = pool.intern(card.getColorIdentity());
+        mWatermark = pool.intern(card.mWatermark);
+
+        mCmc = card.mCmc;
+        mRarity = card.mRarity;
+        mPower = card.mPower;
+        mToughness = card.mToughness;
+        mLoyalty = card.mLoyalty;
+
+        ByteArrayOutputStream packed = new ByteArrayOutputStream();
+        writeString(packed, card.mText);
+        writeString(packed, card.mFlavor);
+        writeString(packed, card.mNumber);
+        if (null == card.mForeignPrintings) {
+            writeInt(packed, NULL_LENGTH);
+        } else {
+            writeInt(packed, card.mForeignPrintings.size());
+            for (Card.ForeignPrinting fp : card.mForeignPrintings) {
+                writeString(packed, fp.mLanguageCode);
+                writeString(packed, fp.mName);
+            }
+        }
+        mPacked = packed.toByteArray();
+    }
+
+    /**
+     * @return The card's name
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * @return The card's multiverse ID
+     */
+    public int getMultiverseId() {
+        return mMultiverseId;
+    }
+
+    /**
+     * @return A new CardGS with everything that was packed
+     */
+    public CardGS unpack() {
+        CardGS card = new CardGS(mName, mExpansion, mMultiverseId);
+        card.mManaCost = mManaCost;
+        card.mType = mType;
+        card.mArtist = mArtist;
+        card.mColor = mColor;
+        card.setColorIdentity(mColorIdentity);
+        card.mWatermark = mWatermark;
+
+        card.mCmc = mCmc;
+        card.mRarity = mRarity;
+        card.mPower = mPower;
+        card.mToughness = mToughness;
+        card.mLoyalty = mLoyalty;
+
+        ByteBuffer packed = ByteBuffer.wrap(mPacked);
+        card.mText = readString(packed);
+        card.mFlavor = readString(packed);
+        card.mNumber = readString(packed);
+        int numForeignPrintings = packed.getInt();
+        if (NULL_LENGTH == numForeignPrintings) {
+            card.mForeignPrintings = null;
+        } else {
+            card.mForeignPrintings = new ForeignPrintingList();
+            for (int i = 0; i < numForeignPrintings; i++) {
+                Card.ForeignPrinting fp = new Card.ForeignPrinting();
+                fp.mLanguageCode = readString(packed);
+                fp.mName = readString(packed);
+                card.mForeignPrintings.add(fp);
+            }
+        }
+        return card;
+    }
+
+    /**
+     * Two cards are equal if their multiverseId and name are the same, like
+     * CardGS.equals()
+     *
+     * @return true if the cards are the same, false if they are different
+     */
+    @Override
+    public boolean equals(Object arg0) {
+        if (!(arg0 instanceof CompactCard)) {
+            return false;
+        }
+        return (((CompactCard) arg0).mMultiverseId == this.mMultiverseId) && ((CompactCard) arg0).mName.equals(this.mName);
+    }
+
+    /**
+     * @return The same hash code as CardGS.hashCode() for the card this was packed from
+     */
+    @Override
+    public int hashCode() {
+        return 31 * mMultiverseId + (null == mName ? 0 : mName.hashCode());
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String string) {
+        if (null == string) {
+            writeInt(out, NULL_LENGTH);
+            return;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeInt(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (NULL_LENGTH == length) {
+            return null;
+        }
+        String string = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return string;
+    }
+}
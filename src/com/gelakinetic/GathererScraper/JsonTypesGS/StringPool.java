@@ -0,0 +1,35 @@
+package com.gelakinetic.GathererScraper.JsonTypesGS;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A pool of canonical strings. Fields like the type line, artist, and
+ * watermark only have a few thousand distinct values across the catalog, so
+ * every card can share one instance of each instead of holding its own copy.
+ * It is safe to use from multiple scraping threads at once
+ */
+public class StringPool {
+
+    private final ConcurrentHashMap<String, String> mStrings = new ConcurrentHashMap<>();
+
+    /**
+     * @param string A string, may be null
+     * @return The pooled instance equal to string, or null if string is null
+     */
+    public String intern(String string) {
+        if (null == string) {
+            return null;
+        } else if (string.isEmpty()) {
+            return "";
+        }
+        String pooled = mStrings.putIfAbsent(string, string);
+        return (null == pooled) ? string : pooled;
+    }
+
+    /**
+     * @return The number of distinct strings in the pool
+     */
+    public int size() {
+        return mStrings.size();
+    }
+}
@@ -1,18 +0,0 @@
-package com.gelakinetic.GathererScraper;
-
-/**
- * Class containing String constants for languages' code.
- */
-class Language {
-    public static final String Chinese_Traditional = "zh_HANT";
-    public static final String Chinese_Simplified = "zh_HANS";
-    public static final String French = "fr";
-    public static final String German = "de";
-    public static final String Italian = "it";
-    public static final String Japanese = "ja";
-    public static final String Portuguese_Brazil = "pt_BR";
-    public static final String Russian = "ru";
-    public static final String Spanish = "es";
-    public static final String Korean = "ko";
-    public static final String English = "en";
-}
\ No newline at end of file
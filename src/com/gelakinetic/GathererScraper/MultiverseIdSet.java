@@ -0,0 +1,55 @@
+package com.gelakinetic.GathererScraper;
+
+import java.util.BitSet;
+
+/**
+ * A set of multiverse IDs, backed by a bitmap so IDs aren't boxed. Multiverse
+ * IDs are small and dense, so every ID Gatherer has fits in about 64KB. It is
+ * safe to add IDs from multiple scraping threads at once
+ */
+public class MultiverseIdSet {
+
+    private final BitSet mIds = new BitSet();
+    private int mSize = 0;
+
+    /**
+     * Add a multiverse ID to the set
+     *
+     * @param multiverseId The ID to add. Negative IDs are ignored
+     * @return true if the ID was added, false if it was already in the set
+     */
+    public synchronized boolean add(int multiverseId) {
+        if (multiverseId < 0 || mIds.get(multiverseId)) {
+            return false;
+        }
+        mIds.set(multiverseId);
+        mSize++;
+        return true;
+    }
+
+    /**
+     * @param multiverseId The ID to look for
+     * @return true if the ID is in the set, false otherwise
+     */
+    public synchronized boolean contains(int multiverseId) {
+        return multiverseId >= 0 && mIds.get(multiverseId);
+    }
+
+    /**
+     * @return The number of IDs in the set
+     */
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * Iterate over the IDs in ascending order, like BitSet.nextSetBit()
+     *
+     * @param fromId The first ID to check
+     * @return The smallest ID in the set greater than or equal to fromId, or -1
+     * if there isn't one
+     */
+    public synchronized int nextId(int fromId) {
+        return mIds.nextSetBit(Math.max(fromId, 0));
+    }
+}
@@ -0,0 +1,181 @@
+package com.gelakinetic.GathererScraper;
+
+import com.gelakinetic.GathererScraper.JsonTypes.Card;
+import com.gelakinetic.GathererScraper.JsonTypes.ForeignPrintingList;
+import com.gelakinetic.GathererScraper.JsonTypesGS.CardGS;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * This class remembers what was parsed from each card page last time, by
+ * multiverse ID, along with a hash of the page's HTML. When a page is fetched
+ * again and its hash matches, the cards are copied out of the cache instead of
+ * parsing the page with Jsoup and picking every field out of it.
+ *
+ * Foreign printings come from different pages than the card page, so they
+ * aren't cached and are always scraped again.
+ *
+ * The cache is thrown away when PARSER_VERSION changes, so bump it whenever
+ * scrapePage() changes what it makes out of a page
+ */
+class PageCache {
+
+    static final String CACHE_FILE_NAME = "page-cache.json.gzip";
+
+    /* Bump this whenever scrapePage() changes how pages are parsed */
+    private static final int PARSER_VERSION = 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * What was parsed from one card page
+     */
+    static class Entry {
+        /* The MD5 of the page's HTML */
+        String mHash;
+        /* The number of card names on the page */
+        int mNumNames;
+        /* The multiverse IDs of all the printings linked from the page */
+        ArrayList<Integer> mPrintings;
+        /* The cards on the page, without foreign printings */
+        ArrayList<Card> mCards;
+
+        /**
+         * @return Copies of the cards on the page, so the cached ones are never changed
+         */
+        ArrayList<CardGS> getCards() {
+            ArrayList<CardGS> cards = new ArrayList<>(mCards.size());
+            for (Card card : mCards) {
+                cards.add(new CardGS(card));
+            }
+            return cards;
+        }
+    }
+
+    /**
+     * The cache as it's written to a file
+     */
+    private static class CacheFile {
+        int mVersion;
+        HashMap<Integer, Entry> mPages;
+    }
+
+    private final ConcurrentHashMap<Integer, Entry> mPages;
+    private final AtomicInteger mHits = new AtomicInteger();
+    private final AtomicInteger mMisses = new AtomicInteger();
+
+    private PageCache(HashMap<Integer, Entry> pages) {
+        mPages = new ConcurrentHashMap<>(pages);
+    }
+
+    /**
+     * Load the cache from a file. If the file is missing, unreadable, or from
+     * another version of the parser, the cache starts empty
+     *
+     * @param cacheFile The file to load
+     * @return The cache
+     */
+    static PageCache load(File cacheFile) {
+        if (cacheFile.exists()) {
+            try (Reader reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(new FileInputStream(cacheFile), BUFFER_SIZE), StandardCharsets.UTF_8))) {
+                CacheFile file = GathererScraper.getGson().fromJson(reader, CacheFile.class);
+                if (null != file && PARSER_VERSION == file.mVersion && null != file.mPages) {
+                    return new PageCache(file.mPages);
+                }
+                System.out.println("Page cache is from another parser version, starting over");
+            } catch (IOException | JsonParseException e) {
+                System.err.println("Couldn't read page cache, starting over");
+            }
+        }
+        return new PageCache(new HashMap<>());
+    }
+
+    /**
+     * Save the cache to a file
+     *
+     * @param cacheFile The file to save to
+     * @throws IOException If the file can't be written
+     */
+    void save(File cacheFile) throws IOException {
+        CacheFile file = new CacheFile();
+        file.mVersion = PARSER_VERSION;
+        file.mPages = new HashMap<>(mPages);
+
+        File tmpFile = File.createTempFile(cacheFile.getName() + ".", ".tmp", cacheFile.getAbsoluteFile().getParentFile());
+        try {
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                    new ParallelGzipOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), BUFFER_SIZE)),
+                    StandardCharsets.UTF_8), BUFFER_SIZE)) {
+                JsonWriter jsonWriter = GathererScraper.getGson().newJsonWriter(writer);
+                GathererScraper.getGson().toJson(file, CacheFile.class, jsonWriter);
+                jsonWriter.flush();
+            }
+            GathererScraper.replaceAtomically(tmpFile, cacheFile);
+        } finally {
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * @param page A card page's HTML
+     * @return The page's MD5, in hex
+     */
+    static String hash(byte[] page) {
+        return GathererScraper.toHex(GathererScraper.md5().digest(page));
+    }
+
+    /**
+     * @param multiverseId The multiverse ID of the page
+     * @param hash         The hash of the page's HTML
+     * @return What was parsed from the page last time, or null if the page changed or wasn't cached
+     */
+    Entry get(int multiverseId, String hash) {
+        Entry entry = mPages.get(multiverseId);
+        if (null != entry && entry.mHash.equals(hash)) {
+            mHits.incrementAndGet();
+            return entry;
+        }
+        mMisses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Remember what was parsed from a page
+     *
+     * @param multiverseId The multiverse ID of the page
+     * @param hash         The hash of the page's HTML
+     * @param numNames     The number of card names on the page
+     * @param printings    The multiverse IDs of all the printings linked from the page
+     * @param cards        The cards parsed from the page. They're copied, without foreign printings
+     */
+    void put(int multiverseId, String hash, int numNames, Collection<Integer> printings, ArrayList<CardGS> cards) {
+        Entry entry = new Entry();
+        entry.mHash = hash;
+        entry.mNumNames = numNames;
+        entry.mPrintings = new ArrayList<>(printings);
+        entry.mCards = new ArrayList<>(cards.size());
+        for (CardGS card : cards) {
+            CardGS copy = new CardGS(card);
+            copy.mForeignPrintings = new ForeignPrintingList();
+            entry.mCards.add(copy);
+        }
+        mPages.put(multiverseId, entry);
+    }
+
+    /**
+     * @return How many pages were reused and parsed, for feedback
+     */
+    String getStats() {
+        return mHits.get() + " card pages unchanged, " + mMisses.get() + " parsed";
+    }
+}
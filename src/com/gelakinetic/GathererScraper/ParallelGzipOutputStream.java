@@ -0,0 +1,249 @@
+package com.gelakinetic.GathererScraper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * This stream writes gzip like GZIPOutputStream, but deflates blocks of the
+ * input on every core at once, like pigz. Each block is deflated on its own,
+ * primed with the last 32K of the block before it, and ends with a sync flush
+ * so the blocks can be joined into one deflate stream. The output is a single
+ * normal gzip member which GZIPInputStream, and every other gzip reader, can
+ * read. The CRC is computed in order as data is written
+ */
+class ParallelGzipOutputStream extends OutputStream {
+
+    /* How much input is deflated in each block */
+    private static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    /* Deflate can refer back this far, so this much of the previous block primes the next one */
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    /* The same header GZIPOutputStream writes */
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    private static final int NUM_COMPRESSORS = Runtime.getRuntime().availableProcessors();
+
+    /* Shared by every stream, so writing many files at once doesn't make more threads than cores */
+    private static final ExecutorService COMPRESSORS = Executors.newFixedThreadPool(NUM_COMPRESSORS, r -> {
+        Thread thread = new Thread(r, "gzip-compressor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final OutputStream mOut;
+    private final int mBlockSize;
+    private final CRC32 mCrc = new CRC32();
+    private long mTotalIn = 0;
+
+    /* The block being filled */
+    private byte[] mBlock;
+    private int mBlockLength = 0;
+
+    /* The end of the last block submitted */
+    private byte[] mDictionary = null;
+
+    /* Blocks being deflated, in order. Only a few are allowed at once */
+    private final ArrayDeque<Future<byte[]>> mPending = new ArrayDeque<>();
+
+    private boolean mClosed = false;
+
+    /**
+     * Create a stream which compresses in 128K blocks
+     *
+     * @param out The stream to write gzip to
+     * @throws IOException If the header can't be written
+     */
+    ParallelGzipOutputStream(OutputStream out) throws IOException {
+        this(out, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param out       The stream to write gzip to
+     * @param blockSize How much input to deflate in each block
+     * @throws IOException If the header can't be written
+     */
+    ParallelGzipOutputStream(OutputStream out, int blockSize) throws IOException {
+        mOut = out;
+        mBlockSize = blockSize;
+        mBlock = new byte[blockSize];
+        mOut.write(GZIP_HEADER);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (mClosed) {
+            throw new IOException("Stream closed");
+        }
+        while (len > 0) {
+            int toCopy = Math.min(len, mBlockSize - mBlockLength);
+            System.arraycopy(b, off, mBlock, mBlockLength, toCopy);
+            mBlockLength += toCopy;
+            off += toCopy;
+            len -= toCopy;
+            if (mBlockLength == mBlockSize) {
+                submitBlock(false);
+            }
+        }
+    }
+
+    /**
+     * Flushes any deflated blocks. Data in the block being filled isn't
+     * flushed, since that would make a small block
+     *
+     * @throws IOException If the blocks can't be written
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!mPending.isEmpty() && mPending.peek().isDone()) {
+            writeOldestBlock();
+        }
+        mOut.flush();
+    }
+
+    /**
+     * Deflate the last block, write everything and the gzip trailer, and close
+     * the underlying stream
+     *
+     * @throws IOException If anything can't be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        try {
+            submitBlock(true);
+            while (!mPending.isEmpty()) {
+                writeOldestBlock();
+            }
+            writeIntLE((int) mCrc.getValue());
+            writeIntLE((int) mTotalIn);
+        } finally {
+            mClosed = true;
+            for (Future<byte[]> pending : mPending) {
+                pending.cancel(true);
+            }
+            mOut.close();
+        }
+    }
+
+    /**
+     * Send the block being filled to be deflated, then start a new one. If too
+     * many blocks are being deflated, wait for the oldest and write it
+     *
+     * @param isLast true if this is the last block in the stream
+     * @throws IOException If a block can't be written
+     */
+    private void submitBlock(final boolean isLast) throws IOException {
+        final byte[] block = mBlock;
+        final int length = mBlockLength;
+        final byte[] dictionary = mDictionary;
+
+        mCrc.update(block, 0, length);
+        mTotalIn += length;
+
+        if (length >= DICTIONARY_SIZE) {
+            mDictionary = Arrays.copyOfRange(block, length - DICTIONARY_SIZE, length);
+        } else if (length > 0) {
+            /* Keep the end of the old dictionary too, for short blocks */
+            int kept = (null == dictionary) ? 0 : Math.min(dictionary.length, DICTIONARY_SIZE - length);
+            byte[] newDictionary = new byte[kept + length];
+            if (kept > 0) {
+                System.arraycopy(dictionary, dictionary.length - kept, newDictionary, 0, kept);
+            }
+            System.arraycopy(block, 0, newDictionary, kept, length);
+            mDictionary = newDictionary;
+        }
+
+        mPending.add(COMPRESSORS.submit(() -> deflateBlock(block, length, dictionary, isLast)));
+        mBlock = new byte[mBlockSize];
+        mBlockLength = 0;
+
+        while (mPending.size() > 2 * NUM_COMPRESSORS) {
+            writeOldestBlock();
+        }
+    }
+
+    /**
+     * Wait for the oldest block to be deflated, then write it
+     *
+     * @throws IOException If the block can't be deflated or written
+     */
+    private void writeOldestBlock() throws IOException {
+        try {
+            mOut.write(mPending.poll().get());
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Deflate one block as raw deflate data
+     *
+     * @param block      The data to deflate
+     * @param length     How much of the data to deflate
+     * @param dictionary The end of the previous block, or null if this is the first block
+     * @param isLast     true to finish the deflate stream, false to end with a sync flush
+     * @return The deflated block
+     */
+    private static byte[] deflateBlock(byte[] block, int length, byte[] dictionary, boolean isLast) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            if (null != dictionary) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(block, 0, length);
+
+            ByteArrayOutputStream deflated = new ByteArrayOutputStream(length / 4 + 64);
+            byte[] buffer = new byte[16 * 1024];
+            if (isLast) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int written = deflater.deflate(buffer);
+                    deflated.write(buffer, 0, written);
+                }
+            } else {
+                /* A sync flush ends on a byte boundary, so the next block can follow it directly */
+                int written;
+                do {
+                    written = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    deflated.write(buffer, 0, written);
+                } while (written == buffer.length);
+            }
+            return deflated.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Write an int in little endian order, as gzip's trailer wants it
+     *
+     * @param value The int to write
+     * @throws IOException If it can't be written
+     */
+    private void writeIntLE(int value) throws IOException {
+        mOut.write(value & 0xFF);
+        mOut.write((value >> 8) & 0xFF);
+        mOut.write((value >> 16) & 0xFF);
+        mOut.write((value >> 24) & 0xFF);
+    }
+}
@@ -0,0 +1,338 @@
+package com.gelakinetic.GathererScraper;
+
+import com.gelakinetic.GathererScraper.JsonTypes.Card;
+import com.gelakinetic.GathererScraper.JsonTypes.Patch;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * This class writes delta patches, which take a client from one release of an
+ * expansion's patch to the next without downloading the whole patch again.
+ *
+ * A delta is gzipped JSON:
+ * <pre>
+ * {
+ *   "code": the expansion code,
+ *   "baseDigest": the digest of the patch the delta applies to,
+ *   "digest": the digest of the patch the delta makes,
+ *   "expansion": the new expansion, whole,
+ *   "removed": [{"multiverseId", "name"} for each card which is gone],
+ *   "changed": [{"multiverseId", "name", "fields": {only the fields which changed}}],
+ *   "added": [each new card, whole]
+ * }
+ * </pre>
+ * Cards are matched by multiverse ID and name, since the faces of split and
+ * double faced cards share a multiverse ID.
+ *
+ * The new patch is already in memory, so it's indexed by key. The old patch
+ * is streamed one card at a time, and each card is matched and compared as
+ * it's read. That's linear in the size of both patches, and the old patch is
+ * never all in memory.
+ *
+ * The base digest is read from the old patch itself, so it's always the
+ * digest of the patch which was diffed. The delta is staged before the old
+ * patch is replaced, and only committed once the new patch is written, like
+ * PatchWriter.StagedPatch
+ */
+class PatchDelta {
+
+    static final String DELTA_EXTENSION = ".delta.json.gzip";
+
+    /**
+     * A delta which has been written to a temporary file, but not published yet
+     */
+    static class StagedDelta {
+        private final File mStagingFile;
+        private final int mNumChanges;
+
+        StagedDelta(File stagingFile, int numChanges) {
+            mStagingFile = stagingFile;
+            mNumChanges = numChanges;
+        }
+
+        /**
+         * @return The number of cards added, removed or changed
+         */
+        int getNumChanges() {
+            return mNumChanges;
+        }
+
+        /**
+         * Rename the staged delta over the delta file
+         *
+         * @param deltaFile The file to publish the delta as
+         * @throws IOException If the delta couldn't be renamed
+         */
+        void commit(File deltaFile) throws IOException {
+            try {
+                GathererScraper.replaceAtomically(mStagingFile, deltaFile);
+            } finally {
+                discard();
+            }
+        }
+
+        /**
+         * Delete the staged delta without publishing it
+         */
+        void discard() {
+            if (mStagingFile.exists() && !mStagingFile.delete()) {
+                System.err.println("Couldn't delete " + mStagingFile.getPath());
+            }
+        }
+    }
+
+    /**
+     * Write a delta from an old patch file to a new patch into a temporary
+     * file. This has to be done before the old patch is replaced
+     *
+     * @param oldPatchFile The gzipped patch being replaced
+     * @param newPatch     The new patch
+     * @param newDigest    The digest of the new patch
+     * @param deltaFile    The file the delta will be committed to. It's staged next to it
+     * @return The staged delta, to be committed or discarded
+     * @throws IOException If the old patch can't be read, or the delta can't be written
+     */
+    static StagedDelta stage(File oldPatchFile, Patch newPatch, String newDigest, File deltaFile)
+            throws IOException {
+        Gson gson = GathererScraper.getGson();
+
+        /* Index the new cards by key, as JSON so they compare like they're written */
+        LinkedHashMap<String, JsonObject> newCards = new LinkedHashMap<>();
+        for (Card card : newPatch.mCards) {
+            JsonObject newCard = gson.toJsonTree(card, Card.class).getAsJsonObject();
+
+            /* Null fields aren't in patches, so they aren't here either */
+            ArrayList<String> nullFields = new ArrayList<>();
+            for (Map.Entry<String, JsonElement> field : newCard.entrySet()) {
+                if (field.getValue().isJsonNull()) {
+                    nullFields.add(field.getKey());
+                }
+            }
+            for (String nullField : nullFields) {
+                newCard.remove(nullField);
+            }
+
+            if (null != newCards.put(getKey(card.mMultiverseId, card.mName), newCard)) {
+                throw new IOException("Two cards are " + card.mMultiverseId + " " + card.mName + ", can't make a delta");
+            }
+        }
+
+        /* Stream the old cards, matching each one as it's read */
+        ArrayList<JsonObject> removed = new ArrayList<>();
+        ArrayList<JsonObject> changed = new ArrayList<>();
+        String baseDigest = null;
+        JsonParser parser = new JsonParser();
+        try (JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(oldPatchFile), 64 * 1024), StandardCharsets.UTF_8)))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("expansion".equals(name)) {
+                    JsonElement expansion = parser.parse(reader);
+                    if (!expansion.isJsonObject()) {
+                        throw new IOException("Malformed patch " + oldPatchFile.getName() + ", the expansion isn't an object");
+                    }
+                    JsonElement digest = expansion.getAsJsonObject().get("digest");
+                    if (null != digest && digest.isJsonPrimitive()) {
+                        baseDigest = digest.getAsString();
+                    }
+                    continue;
+                } else if (!"cards".equals(name)) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    JsonElement element = parser.parse(reader);
+                    if (!element.isJsonObject()) {
+                        throw new IOException("Malformed patch " + oldPatchFile.getName() + ", a card isn't an object");
+                    }
+                    JsonObject oldCard = element.getAsJsonObject();
+                    JsonPrimitive multiverseIdValue = getPrimitive(oldPatchFile, oldCard, "multiverseId");
+                    if (!multiverseIdValue.isNumber()) {
+                        throw new IOException("Malformed patch " + oldPatchFile.getName() + ", a multiverseId isn't a number");
+                    }
+                    int multiverseId = multiverseIdValue.getAsInt();
+                    String cardName = getPrimitive(oldPatchFile, oldCard, "name").getAsString();
+                    JsonObject newCard = newCards.remove(getKey(multiverseId, cardName));
+                    if (null == newCard) {
+                        removed.add(getCardKey(multiverseId, cardName));
+                    } else {
+                        JsonObject fields = diff(oldCard, newCard);
+                        if (fields.entrySet().size() > 0) {
+                            JsonObject change = getCardKey(multiverseId, cardName);
+                            change.add("fields", fields);
+                            changed.add(change);
+                        }
+                    }
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+        } catch (JsonParseException | IllegalStateException e) {
+            /* Thrown by Gson when the old patch isn't shaped like a patch */
+            throw new IOException("Malformed patch " + oldPatchFile.getName(), e);
+        }
+        if (null == baseDigest) {
+            throw new IOException("No digest in " + oldPatchFile.getName() + ", can't make a delta");
+        }
+
+        /* Whatever's left wasn't in the old patch */
+        File tmpFile = File.createTempFile(deltaFile.getName() + ".", ".tmp", deltaFile.getAbsoluteFile().getParentFile());
+        try {
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                    new ParallelGzipOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile))), StandardCharsets.UTF_8))) {
+                JsonWriter out = gson.newJsonWriter(writer);
+                /* So fields which are gone are written */
+                out.setSerializeNulls(true);
+                out.beginObject();
+                out.name("code").value(newPatch.mExpansion.mCode_gatherer);
+                out.name("baseDigest").value(baseDigest);
+                out.name("digest").value(newDigest);
+                out.name("expansion");
+                String expansionDigest = newPatch.mExpansion.mDigest;
+                newPatch.mExpansion.mDigest = newDigest;
+                try {
+                    gson.toJson(newPatch.mExpansion, newPatch.mExpansion.getClass(), out);
+                } finally {
+                    newPatch.mExpansion.mDigest = expansionDigest;
+                }
+                writeArray(gson, out, "removed", removed);
+                writeArray(gson, out, "changed", changed);
+                writeArray(gson, out, "added", newCards.values());
+                out.endObject();
+                out.flush();
+            }
+        } catch (IOException | RuntimeException e) {
+            tmpFile.delete();
+            throw e;
+        }
+        return new StagedDelta(tmpFile, removed.size() + changed.size() + newCards.size());
+    }
+
+    /**
+     * Read which digests a delta goes between, without reading the cards
+     *
+     * @param deltaFile The delta
+     * @return The base digest, then the digest the delta makes
+     * @throws IOException If the delta can't be read
+     */
+    static String[] readDigests(File deltaFile) throws IOException {
+        String baseDigest = null;
+        String digest = null;
+        try (JsonReader reader = new JsonReader(new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(deltaFile)), StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            /* The digests are written first */
+            while (reader.hasNext() && (null == baseDigest || null == digest)) {
+                switch (reader.nextName()) {
+                    case "baseDigest":
+                        baseDigest = reader.nextString();
+                        break;
+                    case "digest":
+                        digest = reader.nextString();
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+        } catch (IllegalStateException e) {
+            throw new IOException("Malformed delta " + deltaFile.getName(), e);
+        }
+        if (null == baseDigest || null == digest) {
+            throw new IOException("No digests in delta " + deltaFile.getName());
+        }
+        return new String[]{baseDigest, digest};
+    }
+
+    /**
+     * @param oldCard A card from the old patch
+     * @param newCard The same card from the new patch
+     * @return The new values of every field which changed. Fields which are
+     * gone are JSON null
+     */
+    private static JsonObject diff(JsonObject oldCard, JsonObject newCard) {
+        JsonObject fields = new JsonObject();
+        HashSet<String> oldFields = new HashSet<>();
+        for (Map.Entry<String, JsonElement> oldField : oldCard.entrySet()) {
+            oldFields.add(oldField.getKey());
+            JsonElement newValue = newCard.get(oldField.getKey());
+            if (null == newValue) {
+                fields.add(oldField.getKey(), JsonNull.INSTANCE);
+            } else if (!isSame(oldField.getValue(), newValue)) {
+                fields.add(oldField.getKey(), newValue);
+            }
+        }
+        for (Map.Entry<String, JsonElement> newField : newCard.entrySet()) {
+            if (!oldFields.contains(newField.getKey())) {
+                fields.add(newField.getKey(), newField.getValue());
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Numbers read from a file and floats from a card aren't equal(), even
+     * when they're written the same, so numbers are compared as written
+     */
+    private static boolean isSame(JsonElement oldValue, JsonElement newValue) {
+        if (oldValue.isJsonPrimitive() && newValue.isJsonPrimitive()
+                && ((JsonPrimitive) oldValue).isNumber() && ((JsonPrimitive) newValue).isNumber()) {
+            return oldValue.getAsString().equals(newValue.getAsString());
+        }
+        return oldValue.equals(newValue);
+    }
+
+    private static void writeArray(Gson gson, JsonWriter out, String name, Iterable<JsonObject> objects) throws IOException {
+        /* Not gson.toJson(), which would drop the nulls */
+        TypeAdapter<JsonElement> adapter = gson.getAdapter(JsonElement.class);
+        out.name(name).beginArray();
+        for (JsonObject object : objects) {
+            adapter.write(out, object);
+        }
+        out.endArray();
+    }
+
+    /**
+     * @param patchFile The patch the card is from, for the error
+     * @param card      A card from the patch
+     * @param field     The field to get
+     * @return The field's value
+     * @throws IOException If the card doesn't have the field, or it isn't a single value
+     */
+    private static JsonPrimitive getPrimitive(File patchFile, JsonObject card, String field) throws IOException {
+        JsonElement value = card.get(field);
+        if (null == value || !value.isJsonPrimitive()) {
+            throw new IOException("Malformed patch " + patchFile.getName() + ", a card has no " + field);
+        }
+        return value.getAsJsonPrimitive();
+    }
+
+    private static JsonObject getCardKey(int multiverseId, String name) {
+        JsonObject key = new JsonObject();
+        key.addProperty("multiverseId", multiverseId);
+        key.addProperty("name", name);
+        return key;
+    }
+
+    private static String getKey(int multiverseId, String name) {
+        return multiverseId + "|" + name;
+    }
+}
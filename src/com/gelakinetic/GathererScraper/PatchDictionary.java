@@ -0,0 +1,200 @@
+package com.gelakinetic.GathererScraper;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * This class is a deflate preset dictionary for patches. Every patch repeats
+ * the same keys, type lines, languages and URLs, but a gzipped patch has to
+ * learn them all over again. Deflating with a dictionary of those lines means
+ * even the first card in a small set can refer back to them.
+ *
+ * Patches encoded with a dictionary are zlib streams (RFC 1950) with the FDICT
+ * flag set, so the DICTID in the header is the Adler-32 of the dictionary.
+ * That's also the dictionary's ID in the manifest. A client inflates them with
+ * an Inflater, and when needsDictionary() is true, checks getAdler() against
+ * the ID and calls setDictionary()
+ */
+class PatchDictionary {
+
+    static final String DICTIONARY_FILE_NAME = "patches.dict";
+    static final String PATCH_EXTENSION = ".json.zdict";
+
+    /* Deflate can't refer back further than this, so a bigger dictionary is wasted */
+    private static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+
+    /* Lines shorter than this are cheaper to deflate than to refer back to */
+    private static final int MIN_LINE_LENGTH = 8;
+
+    /* A zlib header is CMF, FLG, then the DICTID when FLG has FDICT set */
+    private static final int ZLIB_FDICT = 0x20;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final byte[] mDictionary;
+    private final String mId;
+
+    private PatchDictionary(byte[] dictionary) {
+        mDictionary = dictionary;
+        Adler32 adler = new Adler32();
+        adler.update(dictionary, 0, dictionary.length);
+        mId = String.format("%08x", adler.getValue());
+    }
+
+    /**
+     * Load the dictionary from the patch directory. If there isn't one, train
+     * one from the gzipped patches already there and save it. Keeping the same
+     * dictionary means patches don't all change when one set is scraped
+     *
+     * @param patchDir The directory with the patches
+     * @return The dictionary
+     * @throws IOException If the dictionary can't be read, trained or saved
+     */
+    static PatchDictionary loadOrTrain(File patchDir) throws IOException {
+        File dictionaryFile = new File(patchDir, DICTIONARY_FILE_NAME);
+        if (dictionaryFile.exists()) {
+            return new PatchDictionary(Files.readAllBytes(dictionaryFile.toPath()));
+        }
+
+        File[] patches = patchDir.listFiles((dir, name) -> name.endsWith(".json.gzip"));
+        if (null == patches || 0 == patches.length) {
+            throw new IOException("No patches to train a dictionary from in " + patchDir.getPath());
+        }
+        PatchDictionary dictionary = train(patches);
+
+        File tmpFile = File.createTempFile(DICTIONARY_FILE_NAME + ".", ".tmp", patchDir);
+        try {
+            Files.write(tmpFile.toPath(), dictionary.mDictionary);
+            GathererScraper.replaceAtomically(tmpFile, dictionaryFile);
+        } finally {
+            tmpFile.delete();
+        }
+        System.out.println("Trained patch dictionary " + dictionary.mId + " from " + patches.length + " patches");
+        return dictionary;
+    }
+
+    /**
+     * Train a dictionary from gzipped patches. A line is worth more the more
+     * patches it's in, and the longer it is. The most valuable lines go at the
+     * end of the dictionary, since they're closest to the data and cheapest to
+     * refer back to. Lines only in one patch are left out, since that patch can
+     * learn them by itself. The same patches always make the same dictionary
+     *
+     * @param patches The gzipped patches to train from
+     * @return The dictionary
+     * @throws IOException If a patch can't be read
+     */
+    static PatchDictionary train(File[] patches) throws IOException {
+        /* Count how many patches each line is in */
+        HashMap<String, Integer> patchCounts = new HashMap<>();
+        for (File patch : patches) {
+            HashSet<String> lines = new HashSet<>();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(new FileInputStream(patch), BUFFER_SIZE), StandardCharsets.UTF_8))) {
+                String line;
+                while (null != (line = reader.readLine())) {
+                    if (line.length() >= MIN_LINE_LENGTH) {
+                        lines.add(line);
+                    }
+                }
+            }
+            for (String line : lines) {
+                patchCounts.merge(line, 1, Integer::sum);
+            }
+        }
+
+        ArrayList<Map.Entry<String, Integer>> candidates = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : patchCounts.entrySet()) {
+            if (entry.getValue() > 1) {
+                candidates.add(entry);
+            }
+        }
+
+        /* Most valuable first, with ties broken by the line itself so training is repeatable */
+        candidates.sort((a, b) -> {
+            long scoreA = (long) a.getValue() * a.getKey().length();
+            long scoreB = (long) b.getValue() * b.getKey().length();
+            if (scoreA != scoreB) {
+                return Long.compare(scoreB, scoreA);
+            }
+            return a.getKey().compareTo(b.getKey());
+        });
+
+        /* Take lines until the dictionary is full */
+        ArrayList<byte[]> chosen = new ArrayList<>();
+        int size = 0;
+        for (Map.Entry<String, Integer> candidate : candidates) {
+            byte[] line = (candidate.getKey() + "\n").getBytes(StandardCharsets.UTF_8);
+            if (size + line.length <= MAX_DICTIONARY_SIZE) {
+                chosen.add(line);
+                size += line.length;
+            }
+        }
+
+        /* Then write them least valuable first */
+        byte[] dictionary = new byte[size];
+        int offset = 0;
+        for (int i = chosen.size() - 1; i >= 0; i--) {
+            byte[] line = chosen.get(i);
+            System.arraycopy(line, 0, dictionary, offset, line.length);
+            offset += line.length;
+        }
+        return new PatchDictionary(dictionary);
+    }
+
+    /**
+     * @return The dictionary's ID, the Adler-32 of the dictionary as eight hex digits
+     */
+    String getId() {
+        return mId;
+    }
+
+    /**
+     * Wrap a stream so everything written to it is deflated with this
+     * dictionary. Closing the returned stream finishes the zlib stream and
+     * closes the wrapped one
+     *
+     * @param out The stream to write the zlib stream to
+     * @return A stream to write the uncompressed patch to
+     */
+    OutputStream encode(OutputStream out) {
+        final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, false);
+        deflater.setDictionary(mDictionary);
+        return new DeflaterOutputStream(out, deflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    /* DeflaterOutputStream only ends Deflaters it made itself */
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * @param patchFile A patch which may have been encoded with a dictionary
+     * @return true if the patch exists and its header names this dictionary
+     */
+    boolean isEncodedWith(File patchFile) {
+        if (!patchFile.exists()) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(patchFile))) {
+            in.readUnsignedByte();
+            if (0 == (in.readUnsignedByte() & ZLIB_FDICT)) {
+                return false;
+            }
+            return String.format("%08x", in.readInt() & 0xFFFFFFFFL).equals(mId);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
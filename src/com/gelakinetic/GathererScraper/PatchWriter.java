@@ -0,0 +1,248 @@
+package com.gelakinetic.GathererScraper;
+
+import com.gelakinetic.GathererScraper.JsonTypes.Patch;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+
+/**
+ * This class writes patch files, computing the expansion's digest from the
+ * same serialization that is written to disk.
+ *
+ * The digest is the lowercase hex MD5 of the patch's canonical form, which is
+ * the patch JSON exactly as getGson() writes it (two space indents, '\n' line
+ * endings, no HTML escaping, no null fields), encoded as UTF-8, with the
+ * expansion's digest written as an empty string. It doesn't depend on the
+ * JVM's locale, charset or line separator. The written patch is the canonical
+ * form with the digest filled in.
+ *
+ * Writing is done in two steps. stage() serializes the patch once, through
+ * the hash, into an uncompressed staging file next to the patch. Then the
+ * StagedPatch can be committed, which compresses the staging file into the
+ * patch on every core and fills in the digest, or discarded. A patch can also
+ * be committed with a PatchDictionary, which encodes the same canonical form
+ * with the dictionary into a second file
+ */
+class PatchWriter {
+
+    /* What staging and temporary files end with. They're never published */
+    private static final String STAGING_SUFFIX = ".staging";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /* How the expansion's digest is written in the canonical form */
+    private static final byte[] DIGEST_PLACEHOLDER = "\"digest\": \"\"".getBytes(StandardCharsets.UTF_8);
+
+    /* How much to buffer when staging and compressing */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Wraps the stream a patch is written to with an encoding
+     */
+    private interface Encoder {
+        OutputStream wrap(OutputStream out) throws IOException;
+    }
+
+    /**
+     * A patch which has been serialized and hashed, but not written yet
+     */
+    static class StagedPatch {
+        private final File mStagingFile;
+        private final String mDigest;
+
+        StagedPatch(File stagingFile, String digest) {
+            mStagingFile = stagingFile;
+            mDigest = digest;
+        }
+
+        /**
+         * @return The digest of the patch's canonical form
+         */
+        String getDigest() {
+            return mDigest;
+        }
+
+        /**
+         * Compress the staged patch into a temporary file, with the digest
+         * filled in, then rename it over the patch file and delete the staging
+         * file
+         *
+         * @param patchFile The file to write the patch to
+         * @throws IOException If the patch couldn't be written
+         */
+        void commit(File patchFile) throws IOException {
+            commit(patchFile, null, null);
+        }
+
+        /**
+         * Write the staged patch gzipped, encoded with a dictionary, or both,
+         * then delete the staging file. Either file can be null to not write it
+         *
+         * @param patchFile           The file to write the gzipped patch to, or null
+         * @param dictionaryPatchFile The file to write the dictionary encoded patch to, or null
+         * @param dictionary          The dictionary to encode with, if dictionaryPatchFile isn't null
+         * @throws IOException If a patch couldn't be written
+         */
+        void commit(File patchFile, File dictionaryPatchFile, PatchDictionary dictionary) throws IOException {
+            try {
+                if (null != patchFile) {
+                    write(patchFile, ParallelGzipOutputStream::new);
+                }
+                if (null != dictionaryPatchFile) {
+                    write(dictionaryPatchFile, dictionary::encode);
+                }
+            } finally {
+                discard();
+            }
+        }
+
+        /**
+         * Encode the staged patch into a temporary file, then rename it over
+         * the target
+         *
+         * @param outFile The file to write the patch to
+         * @param encoder Wraps the file's stream with the encoding
+         * @throws IOException If the patch couldn't be written
+         */
+        private void write(File outFile, Encoder encoder) throws IOException {
+            File tmpFile = File.createTempFile(outFile.getName() + ".", TMP_SUFFIX, outFile.getAbsoluteFile().getParentFile());
+            try {
+                try (OutputStream out = encoder.wrap(new BufferedOutputStream(new FileOutputStream(tmpFile), BUFFER_SIZE))) {
+                    copyCanonical(out);
+                }
+                GathererScraper.replaceAtomically(tmpFile, outFile);
+            } finally {
+                tmpFile.delete();
+            }
+        }
+
+        /**
+         * Copy the staged patch to a stream, with the digest filled in
+         *
+         * @param out The stream to write to
+         * @throws IOException If the patch couldn't be copied
+         */
+        private void copyCanonical(OutputStream out) throws IOException {
+            try (InputStream in = new FileInputStream(mStagingFile)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+
+                /* The expansion comes first, and its digest comes before anything long, so it's in the first buffer */
+                int read = readFully(in, buffer);
+                int placeholder = indexOf(buffer, read, DIGEST_PLACEHOLDER);
+                if (placeholder < 0) {
+                    throw new IOException("No digest in staged patch " + mStagingFile.getName());
+                }
+                out.write(buffer, 0, placeholder);
+                out.write(("\"digest\": \"" + mDigest + "\"").getBytes(StandardCharsets.UTF_8));
+                int afterPlaceholder = placeholder + DIGEST_PLACEHOLDER.length;
+                out.write(buffer, afterPlaceholder, read - afterPlaceholder);
+
+                /* Then copy the rest */
+                while ((read = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, read);
+                }
+            }
+        }
+
+        /**
+         * Delete the staging file without writing the patch
+         */
+        void discard() {
+            if (mStagingFile.exists() && !mStagingFile.delete()) {
+                System.err.println("Couldn't delete " + mStagingFile.getPath());
+            }
+        }
+    }
+
+    /**
+     * Serialize a patch in canonical form to a staging file, hashing it on the
+     * way. The patch's expansion isn't changed
+     *
+     * @param patch      The patch to stage
+     * @param stagingDir The directory to stage the patch in, usually where the patch will be written
+     * @return The staged patch, to be committed or discarded
+     * @throws IOException If the patch couldn't be staged
+     */
+    static StagedPatch stage(Patch patch, File stagingDir) throws IOException {
+        MessageDigest messageDigest = GathererScraper.md5();
+
+        File stagingFile = File.createTempFile(patch.mExpansion.mCode_gatherer + ".json.", STAGING_SUFFIX, stagingDir);
+        String digest = patch.mExpansion.mDigest;
+        patch.mExpansion.mDigest = "";
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new DigestOutputStream(new BufferedOutputStream(new FileOutputStream(stagingFile), BUFFER_SIZE), messageDigest),
+                StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            Gson gson = GathererScraper.getGson();
+            JsonWriter jsonWriter = gson.newJsonWriter(writer);
+            gson.toJson(patch, patch.getClass(), jsonWriter);
+            jsonWriter.flush();
+        } catch (IOException | RuntimeException e) {
+            stagingFile.delete();
+            throw e;
+        } finally {
+            patch.mExpansion.mDigest = digest;
+        }
+
+        return new StagedPatch(stagingFile, GathererScraper.toHex(messageDigest.digest()));
+    }
+
+    /**
+     * Delete staging and temporary files left in the patch directory by a run
+     * which crashed or failed to write a patch. Call this before any patches
+     * are written, since it can't tell old files from ones being written now
+     *
+     * @param patchDir The directory patches are written to
+     */
+    static void deleteStaleFiles(File patchDir) {
+        File[] staleFiles = patchDir.listFiles((dir, name) -> name.endsWith(STAGING_SUFFIX) || name.endsWith(TMP_SUFFIX));
+        if (null == staleFiles) {
+            return;
+        }
+        for (File staleFile : staleFiles) {
+            if (staleFile.delete()) {
+                System.out.println("Deleted stale " + staleFile.getName());
+            } else {
+                System.err.println("Couldn't delete " + staleFile.getPath());
+            }
+        }
+    }
+
+    /**
+     * Read until the buffer is full or the stream ends
+     *
+     * @param in     The stream to read from
+     * @param buffer The buffer to fill
+     * @return The number of bytes read
+     * @throws IOException If the stream can't be read
+     */
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int total = 0;
+        int read;
+        while (total < buffer.length && (read = in.read(buffer, total, buffer.length - total)) > 0) {
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * @param buffer  The bytes to search
+     * @param length  How many bytes of the buffer to search
+     * @param pattern The bytes to look for
+     * @return The index of the first occurrence of pattern, or -1
+     */
+    private static int indexOf(byte[] buffer, int length, byte[] pattern) {
+        outer:
+        for (int i = 0; i <= length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (buffer[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
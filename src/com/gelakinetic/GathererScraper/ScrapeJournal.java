@@ -0,0 +1,313 @@
+package com.gelakinetic.GathererScraper;
+
+import com.gelakinetic.GathererScraper.JsonTypes.Card;
+import com.gelakinetic.GathererScraper.JsonTypes.Expansion;
+import com.gelakinetic.GathererScraper.JsonTypesGS.CardGS;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+/**
+ * This class is an append-only journal of a scrape run, so a run which dies
+ * partway through can be resumed instead of started over. Every card page
+ * scraped is recorded, and so is every expansion once its patch is written.
+ *
+ * Each record is one line, the CRC-32 of the record in hex, a space, then the
+ * record as JSON. Records are written to the file as soon as they're made, so
+ * they survive the JVM exiting. They're only forced to the disk in batches,
+ * since forcing every card page would be slow, so a crash of the whole machine
+ * can lose the last few card pages. Those are scraped again when resuming.
+ * Finished expansions are forced right away.
+ *
+ * A record which was cut off, or has the wrong CRC, ends the journal. When
+ * resuming, it's truncated there so new records follow the last good one
+ */
+class ScrapeJournal implements Closeable {
+
+    static final String JOURNAL_FILE_NAME = "scrape-journal.log";
+
+    private static final String TYPE_PAGE = "page";
+    private static final String TYPE_EXPANSION = "expansion";
+
+    /* Force the journal to the disk after this many records, or this long, whichever is first */
+    private static final int SYNC_BATCH_SIZE = 64;
+    private static final long SYNC_INTERVAL_MS = 2000;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * One line in the journal
+     */
+    private static class Record {
+        String mType;
+        String mCode;
+        /* For card pages, the listed card's multiverse ID, and every card scraped from its page */
+        int mMultiverseId;
+        ArrayList<Card> mCards;
+        /* For finished expansions, what was set on the expansion while its patch was written */
+        String mDigest;
+        ArrayList<String> mExpansionImageURLs;
+        ArrayList<Integer> mMultiverseIds;
+    }
+
+    private final FileOutputStream mOutputStream;
+    private final FileChannel mChannel;
+    private final CRC32 mCrc = new CRC32();
+    private int mUnsyncedRecords = 0;
+    private long mLastSync = System.currentTimeMillis();
+    /* Expansions finished since the journal was opened */
+    private int mExpansionsFinished = 0;
+
+    /* What was replayed when resuming. It's not changed after that */
+    private final HashMap<String, HashMap<Integer, ArrayList<Card>>> mScrapedPages = new HashMap<>();
+    private final HashMap<String, Record> mFinishedExpansions = new HashMap<>();
+
+    private ScrapeJournal(File journalFile, long validLength) throws IOException {
+        mOutputStream = new FileOutputStream(journalFile, true);
+        mChannel = mOutputStream.getChannel();
+        /* Cut off anything after the last good record */
+        mChannel.truncate(validLength);
+        mChannel.position(validLength);
+    }
+
+    /**
+     * Start a new journal, throwing away the last one
+     *
+     * @param journalFile The journal
+     * @return The journal, empty
+     * @throws IOException If the journal can't be opened
+     */
+    static ScrapeJournal start(File journalFile) throws IOException {
+        return new ScrapeJournal(journalFile, 0);
+    }
+
+    /**
+     * Replay the journal from a run which didn't finish, and keep appending to
+     * it. If there isn't a journal, a new one is started
+     *
+     * @param journalFile The journal
+     * @return The journal, with everything it recorded
+     * @throws IOException If the journal can't be read or opened
+     */
+    static ScrapeJournal resume(File journalFile) throws IOException {
+        ArrayList<Record> records = new ArrayList<>();
+        long validLength = 0;
+        if (journalFile.exists()) {
+            validLength = replay(journalFile, records);
+        }
+
+        ScrapeJournal journal = new ScrapeJournal(journalFile, validLength);
+        for (Record record : records) {
+            if (TYPE_PAGE.equals(record.mType) && null != record.mCards) {
+                journal.mScrapedPages.computeIfAbsent(record.mCode, k -> new HashMap<>()).put(record.mMultiverseId, record.mCards);
+            } else if (TYPE_EXPANSION.equals(record.mType)) {
+                journal.mFinishedExpansions.put(record.mCode, record);
+            }
+        }
+        System.out.println("Resuming with " + records.size() + " journal records, "
+                + journal.mFinishedExpansions.size() + " expansions finished");
+        return journal;
+    }
+
+    /**
+     * Read every good record from the journal
+     *
+     * @param journalFile The journal
+     * @param records     Where to put the records
+     * @return The length of the journal up to the end of the last good record
+     * @throws IOException If the journal can't be read
+     */
+    private static long replay(File journalFile, ArrayList<Record> records) throws IOException {
+        long validLength = 0;
+        long position = 0;
+        CRC32 crc = new CRC32();
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(journalFile), BUFFER_SIZE)) {
+            int b;
+            while ((b = in.read()) != -1) {
+                position++;
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+
+                /* A whole line, check it */
+                byte[] bytes = line.toByteArray();
+                line.reset();
+                if (bytes.length < 10 || bytes[8] != ' ') {
+                    break;
+                }
+                crc.reset();
+                crc.update(bytes, 9, bytes.length - 9);
+                try {
+                    if (Long.parseLong(new String(bytes, 0, 8, StandardCharsets.US_ASCII), 16) != crc.getValue()) {
+                        break;
+                    }
+                    records.add(GathererScraper.getGson().fromJson(
+                            new String(bytes, 9, bytes.length - 9, StandardCharsets.UTF_8), Record.class));
+                } catch (NumberFormatException | JsonParseException e) {
+                    break;
+                }
+                validLength = position;
+            }
+        }
+        if (validLength < journalFile.length()) {
+            System.err.println("Journal ends with a bad record, " + (journalFile.length() - validLength) + " bytes dropped");
+        }
+        return validLength;
+    }
+
+    /**
+     * Record the cards scraped from a listed card's page
+     *
+     * @param code         The expansion's code
+     * @param multiverseId The multiverse ID of the listed card
+     * @param cards        Every card scraped from the page
+     * @throws IOException If the journal can't be written
+     */
+    void pageScraped(String code, int multiverseId, ArrayList<CardGS> cards) throws IOException {
+        Record record = new Record();
+        record.mType = TYPE_PAGE;
+        record.mCode = code;
+        record.mMultiverseId = multiverseId;
+        record.mCards = new ArrayList<>(cards);
+        append(record, false);
+    }
+
+    /**
+     * Record that an expansion's patch was written. Call this after the
+     * expansion's digest is set
+     *
+     * @param exp   The expansion
+     * @param cards Every card in the expansion
+     * @throws IOException If the journal can't be written
+     */
+    void expansionFinished(Expansion exp, ArrayList<CardGS> cards) throws IOException {
+        Record record = new Record();
+        record.mType = TYPE_EXPANSION;
+        record.mCode = exp.mCode_gatherer;
+        record.mDigest = exp.mDigest;
+        record.mExpansionImageURLs = new ArrayList<>(exp.mExpansionImageURLs);
+        record.mMultiverseIds = new ArrayList<>(cards.size());
+        for (CardGS card : cards) {
+            record.mMultiverseIds.add(card.mMultiverseId);
+        }
+        append(record, true);
+        synchronized (this) {
+            mExpansionsFinished++;
+        }
+    }
+
+    /**
+     * @return The number of expansions finished since the journal was opened
+     */
+    synchronized int getExpansionsFinished() {
+        return mExpansionsFinished;
+    }
+
+    /**
+     * @param code         The expansion's code
+     * @param multiverseId The multiverse ID of a listed card
+     * @return Copies of the cards scraped from the card's page before resuming, or null if it wasn't scraped
+     */
+    ArrayList<CardGS> getScrapedPage(String code, int multiverseId) {
+        HashMap<Integer, ArrayList<Card>> pages = mScrapedPages.get(code);
+        if (null == pages || !pages.containsKey(multiverseId)) {
+            return null;
+        }
+        ArrayList<CardGS> cards = new ArrayList<>();
+        for (Card card : pages.get(multiverseId)) {
+            cards.add(new CardGS(card));
+        }
+        return cards;
+    }
+
+    /**
+     * If an expansion was finished before resuming, set what was set on it
+     * when its patch was written, so the manifests come out the same
+     *
+     * @param exp               The expansion
+     * @param allMultiverseIds  Where to add the expansion's multiverse IDs, for the appmap
+     * @return true if the expansion was finished and doesn't need scraping, false otherwise
+     */
+    boolean restoreFinishedExpansion(Expansion exp, MultiverseIdSet allMultiverseIds) {
+        Record record = mFinishedExpansions.get(exp.mCode_gatherer);
+        if (null == record) {
+            return false;
+        }
+        exp.mDigest = record.mDigest;
+        if (null != record.mExpansionImageURLs) {
+            for (String url : record.mExpansionImageURLs) {
+                if (!exp.mExpansionImageURLs.contains(url)) {
+                    exp.mExpansionImageURLs.add(url);
+                }
+            }
+        }
+        if (null != record.mMultiverseIds) {
+            for (int multiverseId : record.mMultiverseIds) {
+                allMultiverseIds.add(multiverseId);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write a record to the end of the journal. It goes straight to the file,
+     * and is forced to the disk with the rest of its batch
+     *
+     * @param record The record to write
+     * @param force  true to force the journal to the disk now
+     * @throws IOException If the journal can't be written
+     */
+    private synchronized void append(Record record, boolean force) throws IOException {
+        StringWriter json = new StringWriter();
+        /* Not getGson().newJsonWriter(), which would pretty print over many lines */
+        GathererScraper.getGson().toJson(record, Record.class, new JsonWriter(json));
+        byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+
+        mCrc.reset();
+        mCrc.update(bytes, 0, bytes.length);
+        ByteBuffer line = ByteBuffer.allocate(9 + bytes.length + 1);
+        line.put(String.format("%08x ", mCrc.getValue()).getBytes(StandardCharsets.US_ASCII));
+        line.put(bytes);
+        line.put((byte) '\n');
+        line.flip();
+        while (line.hasRemaining()) {
+            mChannel.write(line);
+        }
+
+        mUnsyncedRecords++;
+        if (force || mUnsyncedRecords >= SYNC_BATCH_SIZE || System.currentTimeMillis() - mLastSync >= SYNC_INTERVAL_MS) {
+            sync();
+        }
+    }
+
+    private void sync() throws IOException {
+        mChannel.force(false);
+        mUnsyncedRecords = 0;
+        mLastSync = System.currentTimeMillis();
+    }
+
+    /**
+     * Force whatever's left to the disk, and close the journal
+     *
+     * @throws IOException If the journal can't be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (mUnsyncedRecords > 0) {
+                sync();
+            }
+        } finally {
+            mOutputStream.close();
+        }
+    }
+}
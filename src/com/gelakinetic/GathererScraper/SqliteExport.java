@@ -0,0 +1,377 @@
+package com.gelakinetic.GathererScraper;
+
+import com.gelakinetic.GathererScraper.JsonTypes.Card;
+import com.gelakinetic.GathererScraper.JsonTypes.Expansion;
+import com.gelakinetic.GathererScraper.JsonTypes.Patch;
+import com.gelakinetic.mtgfam.helpers.database.CardDbAdapter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * This class exports the scraped patches as a script which builds the app's
+ * card database, so the database can be built once and shipped instead of
+ * on every device. If the sqlite3 command line tool is installed, the script
+ * is run with it to build the database too, see buildDatabase(). Otherwise
+ * build it with:
+ *
+ * <pre>
+ * sqlite3 cards.sqlite &lt; cards.sql
+ * </pre>
+ *
+ * The script loads every card with multi-row inserts in a few big
+ * transactions, with journaling and syncing off since a failed build is just
+ * thrown away. The indexes are made after the data is loaded, which is faster
+ * than keeping them up to date row by row. Then it runs ANALYZE so the query
+ * planner knows the indexes, and VACUUM to pack the file
+ */
+class SqliteExport {
+
+    static final String SCRIPT_FILE_NAME = "cards.sql";
+    static final String DATABASE_FILE_NAME = "cards.sqlite";
+
+    /* Rows per INSERT. This isn't a SQLite limit, just a batch size which
+     * keeps each statement small while still parsing few of them
+     */
+    private static final int ROWS_PER_INSERT = 500;
+
+    /* Rows per transaction */
+    private static final int ROWS_PER_TRANSACTION = 20000;
+
+    private static final String[] CARD_COLUMNS = {
+            CardDbAdapter.KEY_NAME,
+            CardDbAdapter.KEY_SET,
+            CardDbAdapter.KEY_SUPERTYPE,
+            CardDbAdapter.KEY_SUBTYPE,
+            CardDbAdapter.KEY_RARITY,
+            CardDbAdapter.KEY_MANACOST,
+            CardDbAdapter.KEY_CMC,
+            CardDbAdapter.KEY_POWER,
+            CardDbAdapter.KEY_TOUGHNESS,
+            CardDbAdapter.KEY_LOYALTY,
+            CardDbAdapter.KEY_ABILITY,
+            CardDbAdapter.KEY_FLAVOR,
+            CardDbAdapter.KEY_ARTIST,
+            CardDbAdapter.KEY_NUMBER,
+            CardDbAdapter.KEY_COLOR,
+            CardDbAdapter.KEY_COLOR_IDENTITY,
+            CardDbAdapter.KEY_MULTIVERSEID,
+            CardDbAdapter.KEY_WATERMARK};
+
+    private static final String[] SET_COLUMNS = {
+            CardDbAdapter.KEY_NAME,
+            CardDbAdapter.KEY_CODE,
+            CardDbAdapter.KEY_CODE_MTGI,
+            CardDbAdapter.KEY_NAME_TCGPLAYER,
+            CardDbAdapter.KEY_NAME_MKM,
+            CardDbAdapter.KEY_DATE,
+            CardDbAdapter.KEY_CAN_BE_FOIL,
+            CardDbAdapter.KEY_ONLINE_ONLY,
+            CardDbAdapter.KEY_BORDER_COLOR,
+            CardDbAdapter.KEY_DIGEST};
+
+    private final Writer mOut;
+    private String mInsertTable = null;
+    private int mRowsInInsert = 0;
+    private int mRowsInTransaction = 0;
+
+    private SqliteExport(Writer out) {
+        mOut = out;
+    }
+
+    /**
+     * Write a script which builds the card database from every gzipped patch
+     * in a directory
+     *
+     * @param patchDir   The directory with the patches
+     * @param scriptFile The file to write the script to
+     * @return The number of cards exported
+     * @throws IOException If a patch can't be read, or the script can't be written
+     */
+    static int exportPatches(File patchDir, File scriptFile) throws IOException {
+        File[] patchFiles = patchDir.listFiles((dir, name) -> name.endsWith(".json.gzip"));
+        if (null == patchFiles || 0 == patchFiles.length) {
+            throw new IOException("No patches to export in " + patchDir.getPath());
+        }
+        Arrays.sort(patchFiles);
+
+        int numCards = 0;
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(scriptFile), StandardCharsets.UTF_8),
+                64 * 1024)) {
+            SqliteExport export = new SqliteExport(out);
+            export.writeSchema();
+
+            /* Only the expansions are kept, so every card isn't in memory at once */
+            ArrayList<Expansion> expansions = new ArrayList<>(patchFiles.length);
+            export.beginTransaction();
+            for (File patchFile : patchFiles) {
+                Patch patch = readPatch(patchFile);
+                for (Card card : patch.mCards) {
+                    export.insertCard(card);
+                    numCards++;
+                }
+                expansions.add(patch.mExpansion);
+            }
+            for (Expansion exp : expansions) {
+                export.insertSet(exp);
+            }
+            export.endInsert();
+            export.commit();
+
+            export.writeIndexes();
+        }
+        return numCards;
+    }
+
+    /**
+     * Build the card database by running a script with the sqlite3 command
+     * line tool. The database is built in a temporary file, then moved over
+     * the old one, since the script can only build a database from scratch
+     *
+     * @param scriptFile   The script from exportPatches()
+     * @param databaseFile The database to build
+     * @return true if the database was built, false if sqlite3 isn't installed
+     * @throws IOException If sqlite3 ran, but couldn't build the database
+     */
+    static boolean buildDatabase(File scriptFile, File databaseFile) throws IOException {
+        File tmpFile = File.createTempFile(databaseFile.getName() + ".", ".tmp", databaseFile.getAbsoluteFile().getParentFile());
+        try {
+            /* sqlite3 would open the empty file as a database anyway, but start clean */
+            tmpFile.delete();
+
+            Process process;
+            try {
+                process = new ProcessBuilder("sqlite3", "-bail", tmpFile.getPath())
+                        .redirectInput(scriptFile)
+                        .redirectErrorStream(true)
+                        .start();
+            } catch (IOException e) {
+                /* sqlite3 isn't on the PATH */
+                return false;
+            }
+
+            /* Read what sqlite3 prints, so it never blocks writing it */
+            StringBuilder output = new StringBuilder();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    output.append(line).append('\n');
+                }
+            }
+            try {
+                if (0 != process.waitFor()) {
+                    throw new IOException("sqlite3 couldn't build " + databaseFile.getName() + ":\n" + output);
+                }
+            } catch (InterruptedException e) {
+                process.destroy();
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted building " + databaseFile.getName(), e);
+            }
+            GathererScraper.replaceAtomically(tmpFile, databaseFile);
+            return true;
+        } finally {
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * @param patchFile A gzipped patch
+     * @return The patch
+     * @throws IOException If the patch can't be read
+     */
+    private static Patch readPatch(File patchFile) throws IOException {
+        try (Reader in = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(patchFile), 64 * 1024), StandardCharsets.UTF_8))) {
+            Patch patch = GathererScraper.getGson().fromJson(in, Patch.class);
+            if (null == patch || null == patch.mExpansion || null == patch.mCards) {
+                throw new IOException("Malformed patch " + patchFile.getName());
+            }
+            return patch;
+        }
+    }
+
+    private void writeSchema() throws IOException {
+        mOut.write("PRAGMA journal_mode = OFF;\n");
+        mOut.write("PRAGMA synchronous = OFF;\n");
+        mOut.write("DROP TABLE IF EXISTS " + CardDbAdapter.DATABASE_TABLE_CARDS + ";\n");
+        mOut.write("DROP TABLE IF EXISTS " + CardDbAdapter.DATABASE_TABLE_SETS + ";\n");
+        mOut.write("CREATE TABLE " + CardDbAdapter.DATABASE_TABLE_CARDS + " ("
+                + CardDbAdapter.KEY_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + CardDbAdapter.KEY_NAME + " TEXT NOT NULL, "
+                + CardDbAdapter.KEY_SET + " TEXT NOT NULL, "
+                + CardDbAdapter.KEY_SUPERTYPE + " TEXT, "
+                + CardDbAdapter.KEY_SUBTYPE + " TEXT, "
+                + CardDbAdapter.KEY_RARITY + " INTEGER, "
+                + CardDbAdapter.KEY_MANACOST + " TEXT, "
+                + CardDbAdapter.KEY_CMC + " INTEGER, "
+                + CardDbAdapter.KEY_POWER + " REAL, "
+                + CardDbAdapter.KEY_TOUGHNESS + " REAL, "
+                + CardDbAdapter.KEY_LOYALTY + " INTEGER, "
+                + CardDbAdapter.KEY_ABILITY + " TEXT, "
+                + CardDbAdapter.KEY_FLAVOR + " TEXT, "
+                + CardDbAdapter.KEY_ARTIST + " TEXT, "
+                + CardDbAdapter.KEY_NUMBER + " TEXT, "
+                + CardDbAdapter.KEY_COLOR + " TEXT, "
+                + CardDbAdapter.KEY_COLOR_IDENTITY + " TEXT, "
+                + CardDbAdapter.KEY_MULTIVERSEID + " INTEGER, "
+                + CardDbAdapter.KEY_WATERMARK + " TEXT);\n");
+        mOut.write("CREATE TABLE " + CardDbAdapter.DATABASE_TABLE_SETS + " ("
+                + CardDbAdapter.KEY_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + CardDbAdapter.KEY_NAME + " TEXT NOT NULL, "
+                + CardDbAdapter.KEY_CODE + " TEXT NOT NULL UNIQUE, "
+                + CardDbAdapter.KEY_CODE_MTGI + " TEXT, "
+                + CardDbAdapter.KEY_NAME_TCGPLAYER + " TEXT, "
+                + CardDbAdapter.KEY_NAME_MKM + " TEXT, "
+                + CardDbAdapter.KEY_DATE + " INTEGER, "
+                + CardDbAdapter.KEY_CAN_BE_FOIL + " INTEGER, "
+                + CardDbAdapter.KEY_ONLINE_ONLY + " INTEGER, "
+                + CardDbAdapter.KEY_BORDER_COLOR + " TEXT, "
+                + CardDbAdapter.KEY_DIGEST + " TEXT);\n");
+    }
+
+    private void writeIndexes() throws IOException {
+        writeIndex(CardDbAdapter.KEY_NAME);
+        writeIndex(CardDbAdapter.KEY_SET);
+        writeIndex(CardDbAdapter.KEY_MULTIVERSEID);
+        writeIndex(CardDbAdapter.KEY_SUPERTYPE);
+        writeIndex(CardDbAdapter.KEY_ARTIST);
+        mOut.write("ANALYZE;\n");
+        mOut.write("VACUUM;\n");
+    }
+
+    private void writeIndex(String column) throws IOException {
+        mOut.write("CREATE INDEX " + CardDbAdapter.DATABASE_TABLE_CARDS + "_" + column + " ON "
+                + CardDbAdapter.DATABASE_TABLE_CARDS + " (" + column + ");\n");
+    }
+
+    private void insertSet(Expansion exp) throws IOException {
+        beginRow(CardDbAdapter.DATABASE_TABLE_SETS, SET_COLUMNS);
+        mOut.write(quote(exp.mName_gatherer));
+        mOut.write(',');
+        mOut.write(quote(exp.mCode_gatherer));
+        mOut.write(',');
+        mOut.write(quote(exp.mCode_mtgi));
+        mOut.write(',');
+        mOut.write(quote(exp.mName_tcgp));
+        mOut.write(',');
+        mOut.write(quote(exp.mName_mkm));
+        mOut.write(',');
+        mOut.write(Long.toString(exp.mReleaseTimestamp));
+        mOut.write(',');
+        mOut.write(exp.mCanBeFoil ? '1' : '0');
+        mOut.write(',');
+        mOut.write(exp.mIsOnlineOnly ? '1' : '0');
+        mOut.write(',');
+        mOut.write(quote(exp.mBorderColor));
+        mOut.write(',');
+        mOut.write(quote(exp.mDigest));
+        mOut.write(')');
+    }
+
+    private void insertCard(Card card) throws IOException {
+        /* Types are split like the app splits them */
+        String supertype = card.mType;
+        String subtype = "";
+        if (null != card.mType) {
+            int dash = card.mType.indexOf(" - ");
+            if (dash >= 0) {
+                supertype = card.mType.substring(0, dash);
+                subtype = card.mType.substring(dash + 3);
+            }
+        }
+
+        beginRow(CardDbAdapter.DATABASE_TABLE_CARDS, CARD_COLUMNS);
+        mOut.write(quote(card.mName));
+        mOut.write(',');
+        mOut.write(quote(card.mExpansion));
+        mOut.write(',');
+        mOut.write(quote(supertype));
+        mOut.write(',');
+        mOut.write(quote(subtype));
+        mOut.write(',');
+        mOut.write(Integer.toString(card.mRarity));
+        mOut.write(',');
+        mOut.write(quote(card.mManaCost));
+        mOut.write(',');
+        mOut.write(Integer.toString(card.mCmc));
+        mOut.write(',');
+        mOut.write(Float.toString(card.mPower));
+        mOut.write(',');
+        mOut.write(Float.toString(card.mToughness));
+        mOut.write(',');
+        mOut.write(Integer.toString(card.mLoyalty));
+        mOut.write(',');
+        mOut.write(quote(card.mText));
+        mOut.write(',');
+        mOut.write(quote(card.mFlavor));
+        mOut.write(',');
+        mOut.write(quote(card.mArtist));
+        mOut.write(',');
+        mOut.write(quote(card.mNumber));
+        mOut.write(',');
+        mOut.write(quote(card.mColor));
+        mOut.write(',');
+        mOut.write(quote(card.getColorIdentity()));
+        mOut.write(',');
+        mOut.write(Integer.toString(card.mMultiverseId));
+        mOut.write(',');
+        mOut.write(quote(card.mWatermark));
+        mOut.write(')');
+    }
+
+    /**
+     * Start a row, starting a new INSERT or transaction when the current one is full
+     *
+     * @param table   The table the row goes in
+     * @param columns The row's columns
+     * @throws IOException If the script can't be written
+     */
+    private void beginRow(String table, String[] columns) throws IOException {
+        if (mRowsInTransaction == ROWS_PER_TRANSACTION) {
+            endInsert();
+            commit();
+            beginTransaction();
+        }
+        if (mRowsInInsert == ROWS_PER_INSERT || !table.equals(mInsertTable)) {
+            endInsert();
+        }
+        if (0 == mRowsInInsert) {
+            mOut.write("INSERT INTO " + table + " (" + String.join(",", columns) + ") VALUES\n(");
+            mInsertTable = table;
+        } else {
+            mOut.write(",\n(");
+        }
+        mRowsInInsert++;
+        mRowsInTransaction++;
+    }
+
+    private void endInsert() throws IOException {
+        if (mRowsInInsert > 0) {
+            mOut.write(";\n");
+            mRowsInInsert = 0;
+        }
+    }
+
+    private void beginTransaction() throws IOException {
+        mOut.write("BEGIN TRANSACTION;\n");
+        mRowsInTransaction = 0;
+    }
+
+    private void commit() throws IOException {
+        mOut.write("COMMIT;\n");
+    }
+
+    /**
+     * @param string A string, or null
+     * @return The string as an SQL literal
+     */
+    private static String quote(String string) {
+        if (null == string) {
+            return "NULL";
+        }
+        return "'" + string.replace("'", "''") + "'";
+    }
+}
@@ -0,0 +1,115 @@
+package com.gelakinetic.GathererScraper;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class writes output files on its own threads, so scraping threads can
+ * go back to the network instead of compressing patches and encoding PNGs.
+ * Only a limited number of writes can be queued. When the writers fall behind,
+ * submitting another write blocks until one finishes. Files are written to a
+ * temporary file and renamed into place, so a file is never half written
+ */
+class WriteBehind {
+
+    /**
+     * A write to run on a writer thread
+     */
+    interface Write {
+        void write() throws IOException;
+    }
+
+    private final ExecutorService mWriters;
+
+    /* One permit for each write which is running or queued */
+    private final Semaphore mSlots;
+
+    /* Files which have a write submitted, but not finished */
+    private final Set<File> mPending = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Start the writer threads
+     *
+     * @param numThreads The number of writes to run at once
+     * @param queueSize  The number of writes which can wait for a thread before submitting blocks
+     */
+    WriteBehind(int numThreads, int queueSize) {
+        mWriters = Executors.newFixedThreadPool(numThreads);
+        mSlots = new Semaphore(numThreads + queueSize);
+    }
+
+    /**
+     * Queue a write, blocking if the queue is full
+     *
+     * @param file  The file which will be written, to track what's pending
+     * @param write The write to run
+     * @throws InterruptedException If interrupted while waiting for space in the queue
+     */
+    void submit(final File file, final Write write) throws InterruptedException {
+        mSlots.acquire();
+        mPending.add(file);
+        try {
+            mWriters.submit(() -> {
+                try {
+                    write.write();
+                } catch (IOException | RuntimeException e) {
+                    e.printStackTrace();
+                } finally {
+                    mPending.remove(file);
+                    mSlots.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            mPending.remove(file);
+            mSlots.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @param file A file which may be written
+     * @return true if a write to this file is queued or running
+     */
+    boolean isPending(File file) {
+        return mPending.contains(file);
+    }
+
+    /**
+     * Queue a processed expansion symbol to be encoded as a PNG and written
+     *
+     * @param symbol The symbol to write
+     * @param file   The file to write the symbol to
+     * @throws InterruptedException If interrupted while waiting for space in the queue
+     */
+    void writeSymbol(final BufferedImage symbol, final File file) throws InterruptedException {
+        submit(file, () -> {
+            File tmpFile = File.createTempFile(file.getName() + ".", ".tmp", file.getAbsoluteFile().getParentFile());
+            try {
+                // If nothing was actually written, don't replace anything
+                if (ImageIO.write(symbol, "png", tmpFile) && 0 != tmpFile.length()) {
+                    GathererScraper.replaceAtomically(tmpFile, file);
+                }
+            } finally {
+                tmpFile.delete();
+            }
+        });
+    }
+
+    /**
+     * Wait for every queued write to finish, then stop the writer threads
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    void finish() throws InterruptedException {
+        mWriters.shutdown();
+        mWriters.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    }
+}
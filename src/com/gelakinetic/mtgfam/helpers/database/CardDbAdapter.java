@@ -11,4 +11,38 @@ public class CardDbAdapter {
     public static final int X = -1006;
     public static final float QUESTION_MARK = -1007;
     public static final float INFINITY = 1000000000; // pronounce it like an astronaut would
+
+    /* Tables and columns in the app's database */
+    public static final String DATABASE_TABLE_CARDS = "cards";
+    public static final String DATABASE_TABLE_SETS = "sets";
+
+    public static final String KEY_ID = "_id";
+    public static final String KEY_NAME = "suggest_text_1";
+    public static final String KEY_SET = "expansion";
+    public static final String KEY_SUPERTYPE = "supertype";
+    public static final String KEY_SUBTYPE = "subtype";
+    public static final String KEY_RARITY = "rarity";
+    public static final String KEY_MANACOST = "manacost";
+    public static final String KEY_CMC = "cmc";
+    public static final String KEY_POWER = "power";
+    public static final String KEY_TOUGHNESS = "toughness";
+    public static final String KEY_LOYALTY = "loyalty";
+    public static final String KEY_ABILITY = "cardtext";
+    public static final String KEY_FLAVOR = "flavor";
+    public static final String KEY_ARTIST = "artist";
+    public static final String KEY_NUMBER = "number";
+    public static final String KEY_COLOR = "color";
+    public static final String KEY_COLOR_IDENTITY = "color_identity";
+    public static final String KEY_MULTIVERSEID = "multiverseID";
+    public static final String KEY_WATERMARK = "watermark";
+
+    public static final String KEY_CODE = "code";
+    public static final String KEY_CODE_MTGI = "code_mtgi";
+    public static final String KEY_NAME_TCGPLAYER = "name_tcgplayer";
+    public static final String KEY_NAME_MKM = "name_mkm";
+    public static final String KEY_DATE = "date";
+    public static final String KEY_CAN_BE_FOIL = "can_be_foil";
+    public static final String KEY_ONLINE_ONLY = "online_only";
+    public static final String KEY_BORDER_COLOR = "border_color";
+    public static final String KEY_DIGEST = "digest";
 }